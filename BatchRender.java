@@ -0,0 +1,492 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * File: BatchRender.java
+ * Created on 22.10.2026, 10:41:17
+ *
+ * Renders an offline sequence like {@link Headless}, split across worker JVMs that each run their own TileRenderer,
+ * to go past the cores one process can use. The coordinator hands out jobs over sockets, a whole frame each or with
+ * -regions a band of tile rows of one, and puts the returned pixels back together in frame order for the PNG or raw
+ * writer of Headless. Bands are rendered with {@link TileRenderer#setRegion}, so the frames come out exactly as one
+ * process renders them.
+ * <p>
+ * The coordinator imports the model before any worker starts, which leaves it in the {@link MeshCache}: workers map
+ * that entry instead of running Assimp again, and the OS shares its pages between them. A worker that dies or does
+ * not answer within -timeout seconds is killed and started again, and its job goes back to the front of the queue;
+ * a job that failed more than -retries times aborts the batch. Workers on other hosts can join through -listen with
+ * {@code BatchRender -worker host:port id ...} as long as they see the same model and texture files.
+ *
+ * <pre>
+ * java -Djava.awt.headless=true BatchRender [-workers n] [-regions n] [-retries n] [-timeout seconds] [-listen host:port]
+ *      [-size 856x480] [-threads n] [-model teapot/debug.fbx] [-texture teapot/debug.png]
+ *      [-orbit frames | -poses file] [-png directory | -raw]
+ * </pre>
+ * -threads is per worker. -D, -Xm and --add-modules options of the coordinator JVM are passed on to the workers.
+ *
+ * @author LWJGL2
+ */
+public class BatchRender {
+
+    private static final int STOP = -1;
+
+    private final int width, height, threadCount;
+    private final File model, texture;
+    private final int workerCount, retries, timeout;
+    private final PrintStream log;
+
+    private ServerSocket server;
+    private String address;
+    private final Process[] workers;
+    private int restarts, connections;
+    private boolean running = true;
+    private String failure;
+
+    // jobs waiting for a worker, failed ones go back to the front
+    private final Deque<Job> jobs = new ArrayDeque<>();
+    // frames being put together and how many of their bands are still missing, jobs are only handed out for frames
+    // up to window ahead of the next one to write
+    private final Map<Integer, int[]> frames = new HashMap<>();
+    private final Map<Integer, Integer> missing = new HashMap<>();
+    private final BlockingQueue<int[]> free = new LinkedBlockingQueue<>();
+    private int bands, written, window;
+    private long failedJobs, renderNanos, jobsDone;
+
+    public BatchRender(int width, int height, int threadCount, File model, File texture, int workerCount, int retries, int timeout, PrintStream log) {
+        this.width = width;
+        this.height = height;
+        this.threadCount = threadCount;
+        this.model = model;
+        this.texture = texture;
+        this.workerCount = workerCount;
+        this.retries = retries;
+        this.timeout = timeout;
+        this.log = log;
+        this.workers = new Process[workerCount];
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = 856, height = 480;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        File model = new File("teapot", "debug.fbx"), texturePath = new File("teapot", "debug.png");
+        File pngDirectory = null;
+        boolean raw = false;
+        List<float[]> poses = Headless.orbit(120);
+        int workerCount = threadCount, regions = 1, retries = 2, timeout = 120;
+        InetSocketAddress listen = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        String coordinator = null;
+        int id = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "-threads":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-model":
+                    model = new File(args[++i]);
+                    break;
+                case "-texture":
+                    texturePath = new File(args[++i]);
+                    break;
+                case "-orbit":
+                    poses = Headless.orbit(Integer.parseInt(args[++i]));
+                    break;
+                case "-poses":
+                    poses = Headless.readPoses(new File(args[++i]));
+                    break;
+                case "-png":
+                    pngDirectory = new File(args[++i]);
+                    pngDirectory.mkdirs();
+                    break;
+                case "-raw":
+                    raw = true;
+                    break;
+                case "-workers":
+                    workerCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-regions":
+                    regions = Integer.parseInt(args[++i]);
+                    break;
+                case "-retries":
+                    retries = Integer.parseInt(args[++i]);
+                    break;
+                case "-timeout":
+                    timeout = Integer.parseInt(args[++i]);
+                    break;
+                case "-listen":
+                    listen = address(args[++i]);
+                    break;
+                case "-worker":
+                    coordinator = args[++i];
+                    id = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        if (coordinator != null) {
+            work(address(coordinator), id, width, height, threadCount, model, texturePath);
+            return;
+        }
+        BatchRender batch = new BatchRender(width, height, threadCount, model, texturePath, workerCount, retries, timeout, System.err);
+        batch.render(poses, regions, listen, pngDirectory, raw ? System.out : null);
+    }
+
+    private static InetSocketAddress address(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+
+    /**
+     * Renders one frame per pose on the workers and writes them in order to {@code pngDirectory} and/or {@code raw}
+     * if given, like {@link Headless#render}. Blocks until all frames are written.
+     *
+     * @param regions bands of tile rows every frame is split into
+     * @throws IOException if a frame failed too often or no worker is left
+     */
+    public void render(List<float[]> poses, int regions, InetSocketAddress listen, File pngDirectory, OutputStream raw) throws Exception {
+        long start = System.nanoTime();
+        // imports the model into the mesh cache once, every worker then maps the cache entry
+        StaticMeshLoader.load(model.getAbsoluteFile());
+        if (!MeshCache.enabled) {
+            log.println("Mesh cache disabled, every worker imports " + model + " again");
+        }
+
+        int tilesY = (height + TileRenderer.DEFAULT_TILE_SIZE - 1) / TileRenderer.DEFAULT_TILE_SIZE;
+        bands = Math.max(1, Math.min(regions, tilesY));
+        window = 4 * Math.max(1, workerCount);
+        for (int frame = 0; frame < poses.size(); frame++) {
+            for (int band = 0; band < bands; band++) {
+                int minY = tilesY * band / bands * TileRenderer.DEFAULT_TILE_SIZE;
+                int maxY = Math.min(height, tilesY * (band + 1) / bands * TileRenderer.DEFAULT_TILE_SIZE) - 1;
+                jobs.add(new Job(frame, poses.get(frame), 0, minY, width - 1, maxY));
+            }
+        }
+
+        server = new ServerSocket();
+        server.bind(listen);
+        InetAddress local = server.getInetAddress().isAnyLocalAddress() ? InetAddress.getLoopbackAddress() : server.getInetAddress();
+        address = local.getHostAddress() + ":" + server.getLocalPort();
+        log.println("Coordinator listening on " + server.getLocalSocketAddress());
+        Thread acceptor = new Thread(this::accept, "Batch acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        BlockingQueue<int[]> pending = new ArrayBlockingQueue<>(4);
+        Headless.Writer writer = new Headless.Writer(width, height, free, pending, pngDirectory, raw);
+        writer.start();
+        try {
+            synchronized (this) {
+                for (int i = 0; i < workerCount; i++) {
+                    spawn(i);
+                }
+            }
+            for (int frame = 0; frame < poses.size(); frame++) {
+                pending.put(awaitFrame(frame));
+            }
+        } finally {
+            shutdown();
+            pending.put(Headless.POISON);
+            writer.join();
+        }
+        if (writer.failure != null) {
+            throw writer.failure;
+        }
+
+        long total = System.nanoTime() - start;
+        synchronized (this) {
+            log.printf("%d frames in %.1f ms (%.1f fps incl. import and output) on %d workers, render mean %.2f ms per job, %d failed jobs, %d restarts%n",
+                    poses.size(), total / 1e6, poses.size() * 1e9 / total, workerCount, jobsDone == 0 ? 0 : renderNanos / 1e6 / jobsDone, failedJobs, restarts);
+        }
+    }
+
+    /**
+     * Starts worker {@code id} as a new JVM that connects back to the coordinator, and a thread that restarts it
+     * when it exits before the batch is done.
+     */
+    private void spawn(int id) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (option.startsWith("-D") || option.startsWith("-Xm") || option.startsWith("--add-modules")) {
+                command.add(option);
+            }
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), BatchRender.class.getName(),
+                "-worker", address, Integer.toString(id), "-size", width + "x" + height, "-threads", Integer.toString(threadCount),
+                "-model", model.getAbsolutePath(), "-texture", texture.getAbsolutePath()));
+        // stdout may carry the raw stream of the coordinator, so the workers only get to write to stderr
+        Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        workers[id] = process;
+        Thread watcher = new Thread(() -> watch(id, process), "Batch worker " + id);
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(int id, Process process) {
+        int exit;
+        try {
+            exit = process.waitFor();
+        } catch (InterruptedException e) {
+            return;
+        }
+        synchronized (this) {
+            if (!running || workers[id] != process) {
+                return;
+            }
+            workers[id] = null;
+            if (restarts < workerCount * (retries + 1)) {
+                restarts++;
+                log.println("Worker " + id + " exited with " + exit + ", restarting it");
+                try {
+                    spawn(id);
+                    return;
+                } catch (IOException e) {
+                    log.println("Could not restart worker " + id + ": " + e);
+                }
+            }
+            if (connections == 0 && Arrays.stream(workers).allMatch(worker -> worker == null)) {
+                failure = "All workers exited, the last one with " + exit;
+                notifyAll();
+            }
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                // closed by shutdown
+                return;
+            }
+            synchronized (this) {
+                connections++;
+            }
+            Thread connection = new Thread(() -> serve(socket), "Batch connection");
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Feeds jobs to one connected worker until there are none left, then tells it to stop.
+     */
+    private void serve(Socket socket) {
+        int id = -1;
+        Process process = null;
+        Job job = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeout * 1000);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            id = in.readInt();
+            process = processOf(id);
+            byte[] bytes = new byte[width * height * 4];
+            IntBuffer pixels = ByteBuffer.wrap(bytes).asIntBuffer();
+            while ((job = take()) != null) {
+                out.writeInt(job.frame);
+                out.writeInt(job.minX);
+                out.writeInt(job.minY);
+                out.writeInt(job.maxX);
+                out.writeInt(job.maxY);
+                for (float value : job.pose) {
+                    out.writeFloat(value);
+                }
+                out.flush();
+                if (in.readInt() != job.frame) {
+                    throw new IOException("Answer to another job");
+                }
+                long nanos = in.readLong();
+                in.readFully(bytes, 0, (job.maxX - job.minX + 1) * (job.maxY - job.minY + 1) * 4);
+                pixels.clear();
+                deliver(job, pixels, nanos);
+                log.printf("frame %d rows %d-%d worker %d render %.2f ms%n", job.frame, job.minY, job.maxY, id, nanos / 1e6);
+                job = null;
+            }
+            out.writeInt(STOP);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            if (job != null) {
+                retry(job, "worker " + id + ": " + e);
+            }
+            // a worker that stopped answering may still be running, the watcher restarts it once it is gone
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        } finally {
+            synchronized (this) {
+                connections--;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized Job take() throws InterruptedException {
+        while (running && (jobs.isEmpty() || jobs.peekFirst().frame >= written + window)) {
+            wait();
+        }
+        return running ? jobs.pollFirst() : null;
+    }
+
+    private synchronized void deliver(Job job, IntBuffer pixels, long nanos) {
+        int[] frame = frames.get(job.frame);
+        if (frame == null) {
+            frame = free.poll();
+            frame = frame == null ? new int[width * height] : frame;
+            frames.put(job.frame, frame);
+            missing.put(job.frame, bands);
+        }
+        int regionWidth = job.maxX - job.minX + 1;
+        for (int y = job.minY; y <= job.maxY; y++) {
+            pixels.get(frame, y * width + job.minX, regionWidth);
+        }
+        missing.put(job.frame, missing.get(job.frame) - 1);
+        renderNanos += nanos;
+        jobsDone++;
+        notifyAll();
+    }
+
+    private synchronized void retry(Job job, String reason) {
+        failedJobs++;
+        log.println("Frame " + job.frame + " rows " + job.minY + "-" + job.maxY + " failed on " + reason);
+        if (++job.attempts > retries) {
+            failure = "Frame " + job.frame + " failed " + job.attempts + " times, last on " + reason;
+        } else {
+            jobs.addFirst(job);
+        }
+        notifyAll();
+    }
+
+    private synchronized int[] awaitFrame(int frame) throws InterruptedException, IOException {
+        while (failure == null && (!missing.containsKey(frame) || missing.get(frame) > 0)) {
+            wait();
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+        missing.remove(frame);
+        written = frame + 1;
+        notifyAll();
+        return frames.remove(frame);
+    }
+
+    /**
+     * @return the process of a worker that was started here, null for workers from other hosts
+     */
+    private synchronized Process processOf(int id) {
+        return id >= 0 && id < workerCount ? workers[id] : null;
+    }
+
+    /**
+     * Stops the workers: connected ones are told to exit, the rest are killed after a grace period.
+     */
+    private void shutdown() throws IOException, InterruptedException {
+        Process[] remaining;
+        synchronized (this) {
+            running = false;
+            notifyAll();
+            remaining = workers.clone();
+        }
+        server.close();
+        for (Process worker : remaining) {
+            if (worker != null && !worker.waitFor(10, TimeUnit.SECONDS)) {
+                worker.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Worker side: loads the scene, connects to the coordinator and renders the jobs it sends until told to stop.
+     */
+    public static void work(InetSocketAddress coordinator, int id, int width, int height, int threadCount, File model, File texturePath) throws Exception {
+        List<StaticMeshLoader.Mesh> meshes = StaticMeshLoader.load(model.getAbsoluteFile());
+        Texture texture = new Texture(ImageIO.read(texturePath.getAbsoluteFile()));
+        Headless headless = new Headless(width, height, threadCount);
+        try (Socket socket = new Socket(coordinator.getAddress(), coordinator.getPort())) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            out.writeInt(id);
+            out.flush();
+            byte[] bytes = new byte[width * height * 4];
+            IntBuffer pixels = ByteBuffer.wrap(bytes).asIntBuffer();
+            float[] pose = new float[7];
+            for (int frame; (frame = in.readInt()) != STOP; ) {
+                int minX = in.readInt(), minY = in.readInt(), maxX = in.readInt(), maxY = in.readInt();
+                for (int i = 0; i < pose.length; i++) {
+                    pose[i] = in.readFloat();
+                }
+                long start = System.nanoTime();
+                headless.renderFrame(meshes, texture, pose, minX, minY, maxX, maxY);
+                long nanos = System.nanoTime() - start;
+                FrameProfiler.frame(headless.buffer);
+
+                pixels.clear();
+                for (int y = minY; y <= maxY; y++) {
+                    pixels.put(headless.buffer.pixelData, y * width + minX, maxX - minX + 1);
+                }
+                out.writeInt(frame);
+                out.writeLong(nanos);
+                out.write(bytes, 0, pixels.position() * 4);
+                out.flush();
+            }
+        } finally {
+            headless.renderer.shutdown();
+        }
+    }
+
+    private static class Job {
+
+        private final int frame;
+        private final float[] pose;
+        // inclusive pixel rectangle
+        private final int minX, minY, maxX, maxY;
+        private int attempts;
+
+        private Job(int frame, float[] pose, int minX, int minY, int maxX, int maxY) {
+            this.frame = frame;
+            this.pose = pose;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+    }
+}
@@ -1,8 +1,14 @@
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.joml.Matrix4f;
 import org.joml.Vector4f;
 
@@ -14,22 +20,255 @@ import org.joml.Vector4f;
  */
 public class Buffer {
 
+    private static final DirectColorModel RGB = new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+    private static final int[] RGB_MASKS = {0xff0000, 0xff00, 0xff};
+
+    // views of pixelData at the sizes the buffer was resized to, see resize
     private BufferedImage image;
+    private final BufferedImage[] images = new BufferedImage[16];
+    private int nextImage;
 
+    /**
+     * width * height pixels in rows of width, the array may be larger after {@link #resize}. Same for every per pixel
+     * array.
+     */
     public int[] pixelData;
-    public float[] depthBuffer;
+    /**
+     * One value per pixel in the {@link #depthFormat}, see {@link #depthKey}. Greater is nearer.
+     */
+    public int[] depthBuffer;
     public int width, height;
 
     public Matrix4f normalMatrix, modelMatrix, viewMatrix, projectionMatrix;
     public int fps;
 
+    // inclusive rectangle where the frame differs from the one presented before it, empty when minX > maxX
+    protected int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+    /**
+     * Packed layout of a set-up triangle: screen x, screen y, depth, 1/w, texture u, texture v and, starting at
+     * TRIANGLE_SURFACE, the surface lit meshes store in the {@link #gBuffer}, per vertex.
+     */
+    public static final int TRIANGLE_SURFACE = 6;
+    public static final int TRIANGLE_VERTEX = TRIANGLE_SURFACE + Lighting.SURFACE_STRIDE;
+    public static final int TRIANGLE_STRIDE = TRIANGLE_VERTEX * 3;
+
+    /**
+     * Perspective correct texture coordinates are evaluated exactly every PERSPECTIVE_SPAN pixels of a row
+     * and stepped linearly in between, which keeps the per-pixel divide off the fast path.
+     */
+    public static final int PERSPECTIVE_SPAN = 8;
+    private static final float[] SPAN_RECIPROCALS = new float[PERSPECTIVE_SPAN + 1];
+
+    static {
+        for (int i = 1; i <= PERSPECTIVE_SPAN; i++) {
+            SPAN_RECIPROCALS[i] = 1.0f / i;
+        }
+    }
+
+    /**
+     * Tint of 0xRRGGBB that leaves texture colors unchanged, see {@link #tint}.
+     */
+    public static final int NO_TINT = 0xffffff;
+
+    /**
+     * What the depth buffer stores per pixel, always as an int that compares like the depth.
+     * FLOAT keeps clip z / w of the projection matrix as float bits. REVERSED_Z stores clipNear / w as a float,
+     * 1 at the near plane and falling towards 0, which keeps the relative float precision over the whole range.
+     * INT16 and INT24 map 1 / w from clipFar to clipNear onto 0 to the largest 16 or 24 bit value, which needs a finite
+     * clipFar, see {@link #setDepthFormat}. They keep a frame epoch in the bits above, so clearing them only starts
+     * a new epoch instead of writing every pixel, see {@link #nextDepthEpoch}.
+     */
+    public enum DepthFormat {
+        FLOAT(0), REVERSED_Z(0), INT16(16), INT24(24);
+
+        /**
+         * Bits of the integer formats, 0 for the float ones.
+         */
+        public final int bits;
+
+        DepthFormat(int bits) {
+            this.bits = bits;
+        }
+    }
+
+    protected DepthFormat depthFormat = DepthFormat.FLOAT;
+    // integer formats: largest depth value, and the first value of the current epoch which every depth is added to
+    protected int depthMax, depthEpoch, depthBase;
+
+    /**
+     * Rasterizes one row of a triangle in {@link #rasterizeTriangle}, given the edge functions, depth and 1/w,
+     * u/w, v/w planes at its first pixel and their steps.
+     */
+    public interface RowRasterizer {
+
+        /**
+         * @return false to leave the row to the scalar loop
+         */
+        boolean row(Buffer buffer, Texture texture, int tint, boolean inside, int x, int y, int count,
+                    long edge21, long edge02, long edge10, long stepX21, long stepX02, long stepX10,
+                    float z, float zDx, float q, float qDx, float qDy, float s, float sDx, float sDy, float t, float tDx, float tDy);
+    }
+
+    /**
+     * The SIMD row loop of {@code simd/VectorRowRasterizer}, null unless the JVM runs with the jdk.incubator.vector module.
+     */
+    public static final RowRasterizer VECTOR_ROWS = loadVectorRows();
+
+    /**
+     * Row loop used instead of the scalar one, null for scalar. Defaults to {@link #VECTOR_ROWS} with -Dbuffer.simd=true.
+     */
+    public RowRasterizer rowRasterizer = Boolean.getBoolean("buffer.simd") ? VECTOR_ROWS : null;
+
+    private static RowRasterizer loadVectorRows() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        try {
+            // loaded by name, so everything else still compiles and runs without the module
+            return (RowRasterizer) Class.forName("VectorRowRasterizer").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sub-pixel precision of the rasterizer, vertices are snapped to 1/16 pixel.
+     */
+    public static final int SUBPIXEL_BITS = 4;
+    private static final long SUBPIXEL_ONE = 1 << SUBPIXEL_BITS;
+    private static final long SUBPIXEL_HALF = SUBPIXEL_ONE >> 1;
+
+    /**
+     * Size of the blocks large triangles are classified in before testing single pixels.
+     */
+    public static final int BLOCK_SIZE = 8;
+
+    /**
+     * Near and far clip distances in clip-space w, see {@link Clipper}. Default to -Dbuffer.near and -Dbuffer.far,
+     * which the integer depth formats need, see {@link #setDepthFormat}.
+     */
+    public float clipNear = Float.parseFloat(System.getProperty("buffer.near", "0.01")),
+            clipFar = Float.parseFloat(System.getProperty("buffer.far", String.valueOf(Float.MAX_VALUE)));
+
+    /**
+     * Hi-Z: farthest depth of every {@link #BLOCK_SIZE} block, never nearer than what the depth buffer holds.
+     * Partially written blocks are flagged stale and tightened on demand by {@link #isOccluded}.
+     */
+    public float[] hiZ;
+    private boolean[] hiZStale;
+    public int hiZWidth, hiZHeight;
+
+    /**
+     * Lights meshes drawn with normals, null draws everything unlit.
+     */
+    public Lighting lighting;
+    /**
+     * Deferred shading input: the {@link Lighting#SURFACE_STRIDE} floats of the surface of every pixel written by a lit
+     * mesh since it was last shaded, which {@link #shade} lights once. Allocated by {@link #prepareLighting}.
+     */
+    public float[] gBuffer;
+    protected boolean[] shadePending;
+
+    /**
+     * Sample positions of the 2, 4 and 8 sample modes, x and y in 1/16 pixel from the pixel center, the standard
+     * rotated patterns so edges of every slope get several distinct coverage steps.
+     */
+    private static final int[][] SAMPLE_PATTERNS = {
+            null, {0, 0},
+            {4, 4, -4, -4}, null,
+            {-2, -6, 6, -2, -6, 2, 2, 6}, null, null, null,
+            {1, -3, -1, 3, 5, 1, -3, -5, -5, 5, -7, -1, 3, 7, 7, -7}
+    };
+
+    /**
+     * Multisampling: depth and coverage are kept per sample, while texture sampling and shading run once per pixel.
+     * A pixel covered entirely by one triangle stays compact, its color in {@link #pixelData} and the depth at its center
+     * in {@link #depthBuffer}. Only pixels on an edge get a slot of {@code samples} colors and depths in the sample
+     * pool, and {@link #resolve} averages them into pixelData. Set with {@link #setSamples} or -Dbuffer.msaa.
+     */
+    protected int samples = 1, sampleMask = 1;
+    protected int[] sampleOffsets = SAMPLE_PATTERNS[1];
+    // slot in the pool of every pixel, -1 for compact ones
+    protected int[] sampleSlots;
+    protected boolean[] resolvePending;
+    protected int[] sampleColors, sampleDepths;
+    private final AtomicInteger samplesUsed = new AtomicInteger();
+    private volatile boolean samplesOverflowed;
+
+    /**
+     * Triangles rejected by the Hi-Z test since the last clear. Triangles drawn through TileRenderer
+     * are counted once per tile they were rejected in.
+     */
+    public final LongAdder culledTriangles = new LongAdder();
+
+    // scratch state of the immediate drawing methods, which run on one thread at a time
+    private final Matrix4f mvp = new Matrix4f();
+    private final VertexStage vertexStage = new VertexStage();
+    private final Clipper clipper = new Clipper();
+    private final float[] triangleScratch = new float[TRIANGLE_STRIDE * Clipper.MAX_TRIANGLES];
+    private final float[] boundsScratch = new float[5];
+    private final VertexInfo[] vertexInfos = {new VertexInfo(), new VertexInfo(), new VertexInfo()};
+    private final float[] barycentric = new float[3];
+
     public Buffer(int width, int height) {
         create(width, height);
+        setDepthFormat(DepthFormat.valueOf(System.getProperty("buffer.depth", DepthFormat.FLOAT.name())));
+        setSamples(Integer.getInteger("buffer.msaa", 1));
     }
 
     public void clear(Color color) {
-        Arrays.fill(pixelData, color.getRGB());
-        Arrays.fill(depthBuffer, 0);
+        long start = FrameProfiler.start();
+        Arrays.fill(pixelData, 0, width * height, color.getRGB());
+        setDirty(0, 0, width - 1, height - 1);
+        if (!nextDepthEpoch()) {
+            Arrays.fill(depthBuffer, 0, width * height, 0);
+        }
+        Arrays.fill(hiZ, 0);
+        Arrays.fill(hiZStale, false);
+        if (shadePending != null) {
+            Arrays.fill(shadePending, false);
+        }
+        if (samples > 1) {
+            Arrays.fill(sampleSlots, 0, width * height, -1);
+            Arrays.fill(resolvePending, 0, width * height, false);
+            releaseSamples();
+        }
+        culledTriangles.reset();
+        FrameProfiler.stage(FrameProfiler.Stage.CLEAR, start);
+    }
+
+    /**
+     * Clears color, depth and Hi-Z of the inclusive rectangle, used to clear tiles in parallel.
+     * Rectangles should start on {@link #BLOCK_SIZE} boundaries, the Hi-Z blocks they touch are reset entirely.
+     */
+    public void clear(int color, int minX, int minY, int maxX, int maxY) {
+        clear(color, minX, minY, maxX, maxY, true);
+    }
+
+    /**
+     * Same as {@link #clear(int, int, int, int, int)}, leaving depth alone unless {@code depth} is set, for
+     * callers that already cleared it with {@link #nextDepthEpoch}. Multisampled pixels become compact, the pool
+     * their samples were in is only reused after {@link #releaseSamples}.
+     */
+    public void clear(int color, int minX, int minY, int maxX, int maxY, boolean depth) {
+        for (int y = minY; y <= maxY; y++) {
+            Arrays.fill(pixelData, y * width + minX, y * width + maxX + 1, color);
+            if (depth) {
+                Arrays.fill(depthBuffer, y * width + minX, y * width + maxX + 1, 0);
+            }
+            if (shadePending != null) {
+                Arrays.fill(shadePending, y * width + minX, y * width + maxX + 1, false);
+            }
+            if (samples > 1) {
+                Arrays.fill(sampleSlots, y * width + minX, y * width + maxX + 1, -1);
+                Arrays.fill(resolvePending, y * width + minX, y * width + maxX + 1, false);
+            }
+        }
+        for (int blockY = minY / BLOCK_SIZE; blockY <= maxY / BLOCK_SIZE; blockY++) {
+            Arrays.fill(hiZ, blockY * hiZWidth + minX / BLOCK_SIZE, blockY * hiZWidth + maxX / BLOCK_SIZE + 1, 0);
+            Arrays.fill(hiZStale, blockY * hiZWidth + minX / BLOCK_SIZE, blockY * hiZWidth + maxX / BLOCK_SIZE + 1, false);
+        }
     }
 
     public void drawPixel(int x, int y, Color color) {
@@ -37,26 +276,401 @@ public class Buffer {
     }
 
     public void drawPixel(int x, int y, int color) {
-        int index = x + y * width;
-        if (index > pixelData.length - 1) {
-            return;
-        }
-        if (index < 0) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
             return;
         }
 
-        pixelData[index] = color;
+        pixelData[x + y * width] = color;
     }
 
     public void create(int width, int height) {
         this.width = width;
         this.height = height;
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        pixelData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        pixelData = new int[width * height];
+        Arrays.fill(images, null);
+        image = image(width, height);
+        setDirty(0, 0, width - 1, height - 1);
+
+        depthBuffer = new int[width * height];
+        depthEpoch = 0;
+        depthBase = 0;
+        hiZWidth = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        hiZHeight = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        hiZ = new float[hiZWidth * hiZHeight];
+        hiZStale = new boolean[hiZWidth * hiZHeight];
+        gBuffer = null;
+        shadePending = null;
+        if (samples > 1) {
+            setSamples(samples);
+        }
+    }
+
+    /**
+     * Changes the size rendered at, e.g. for {@link DynamicResolution}. As long as width * height pixels fit the arrays
+     * of the largest size so far, they are reused as they are and nothing is allocated, except an image view of the
+     * pixels the first time a size is used. Pixels are undefined until the next clear.
+     */
+    public void resize(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        int hiZWidth = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int hiZHeight = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (width * height > pixelData.length || hiZWidth * hiZHeight > hiZ.length) {
+            create(width, height);
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.hiZWidth = hiZWidth;
+        this.hiZHeight = hiZHeight;
+        image = image(width, height);
+        setDirty(0, 0, width - 1, height - 1);
+        // rows moved, so nothing left in depth and Hi-Z belongs to the new pixels; integer formats restart their
+        // epochs from cleared memory, the part of the arrays beyond the new size may be stale from an earlier one
+        depthEpoch = 0;
+        depthBase = 0;
+        Arrays.fill(depthBuffer, 0, width * height, 0);
+        Arrays.fill(hiZ, 0, hiZWidth * hiZHeight, 0);
+        Arrays.fill(hiZStale, 0, hiZWidth * hiZHeight, false);
+        if (shadePending != null) {
+            Arrays.fill(shadePending, 0, width * height, false);
+        }
+        if (samples > 1) {
+            Arrays.fill(sampleSlots, 0, width * height, -1);
+            Arrays.fill(resolvePending, 0, width * height, false);
+            releaseSamples();
+        }
+    }
+
+    /**
+     * @return an RGB image of the first width * height pixels, one of the cached views if there is one
+     */
+    private BufferedImage image(int width, int height) {
+        for (BufferedImage cached : images) {
+            if (cached != null && cached.getWidth() == width && cached.getHeight() == height) {
+                return cached;
+            }
+        }
+        DataBufferInt data = new DataBufferInt(pixelData, width * height);
+        BufferedImage view = new BufferedImage(RGB, Raster.createPackedRaster(data, width, height, width, RGB_MASKS, null), false, null);
+        images[nextImage] = view;
+        nextImage = (nextImage + 1) % images.length;
+        return view;
+    }
+
+    /**
+     * Switches between 1 (off), 2, 4 and 8 samples per pixel and makes every pixel compact. The pool starts with
+     * room for a quarter of the pixels to be on an edge and grows when a frame needs more, see {@link #releaseSamples}.
+     */
+    public void setSamples(int count) {
+        if (count < 1 || count >= SAMPLE_PATTERNS.length || SAMPLE_PATTERNS[count] == null) {
+            throw new IllegalArgumentException("Expected 1, 2, 4 or 8 samples, got " + count);
+        }
+        samples = count;
+        sampleMask = (1 << count) - 1;
+        sampleOffsets = SAMPLE_PATTERNS[count];
+        if (count == 1) {
+            sampleSlots = null;
+            resolvePending = null;
+            sampleColors = null;
+            sampleDepths = null;
+            return;
+        }
+        sampleSlots = new int[pixelData.length];
+        Arrays.fill(sampleSlots, -1);
+        resolvePending = new boolean[pixelData.length];
+        sampleColors = new int[Math.max(64, pixelData.length / 4) * count];
+        sampleDepths = new int[sampleColors.length];
+        samplesUsed.set(0);
+        samplesOverflowed = false;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Frees every slot of the sample pool once all pixels are cleared or about to be, growing the pool if the frame
+     * before ran out. Pixels that found the pool full kept a single sample.
+     */
+    public void releaseSamples() {
+        if (samples == 1) {
+            return;
+        }
+        if (samplesOverflowed) {
+            int slots = Math.min(pixelData.length, Math.max(samplesUsed.get(), sampleColors.length / samples * 2));
+            sampleColors = new int[slots * samples];
+            sampleDepths = new int[slots * samples];
+            samplesOverflowed = false;
+        }
+        samplesUsed.set(0);
+    }
+
+    /**
+     * @return a free slot of the sample pool, -1 if it is full
+     */
+    private int allocateSamples() {
+        int slot = samplesUsed.getAndIncrement();
+        if (slot >= sampleColors.length / samples) {
+            samplesOverflowed = true;
+            return -1;
+        }
+        return slot;
+    }
 
-        depthBuffer = new float[width * height];
+    /**
+     * Averages the samples of every multisampled pixel of the inclusive rectangle written since it was last resolved
+     * into {@link #pixelData}. Compact pixels already hold their color. Disjoint rectangles may be resolved concurrently.
+     */
+    public void resolve(int minX, int minY, int maxX, int maxY) {
+        if (samples == 1) {
+            return;
+        }
+        for (int y = minY; y <= maxY; y++) {
+            for (int index = minX + y * width, end = maxX + y * width; index <= end; index++) {
+                if (resolvePending[index]) {
+                    resolvePending[index] = false;
+                    int red = 0, green = 0, blue = 0;
+                    for (int i = sampleSlots[index] * samples, last = i + samples; i < last; i++) {
+                        int color = sampleColors[i];
+                        red += color >> 16 & 0xff;
+                        green += color >> 8 & 0xff;
+                        blue += color & 0xff;
+                    }
+                    int half = samples >> 1;
+                    pixelData[index] = 0xff000000 | (red + half) / samples << 16 | (green + half) / samples << 8 | (blue + half) / samples;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bit s set for every sample s of the pixel whose edge functions at the center are given, with the
+     * per 1/16 pixel steps of the edge functions
+     */
+    private int sampleCoverage(long edge21, long edge02, long edge10, long stepX21, long stepY21, long stepX02, long stepY02, long stepX10, long stepY10) {
+        int coverage = 0;
+        for (int s = 0; s < samples; s++) {
+            int x = sampleOffsets[s * 2], y = sampleOffsets[s * 2 + 1];
+            if ((edge21 + x * stepX21 + y * stepY21 | edge02 + x * stepX02 + y * stepY02 | edge10 + x * stepX10 + y * stepY10) >= 0) {
+                coverage |= 1 << s;
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * Depth tests the covered samples of a pixel, with a compact pixel's center depth standing in for all of them.
+     *
+     * @param z    depth at the pixel center
+     * @param zDx  depth step per 1/16 pixel
+     * @return bit s set for every sample s that passed
+     */
+    private int testSamples(int pixelIndex, int coverage, float z, float zDx, float zDy) {
+        int slot = sampleSlots[pixelIndex];
+        int passed = 0;
+        for (int s = 0; s < samples; s++) {
+            if ((coverage >> s & 1) != 0) {
+                int stored = slot < 0 ? depthBuffer[pixelIndex] : sampleDepths[slot * samples + s];
+                if (depthKey(z + sampleOffsets[s * 2] * zDx + sampleOffsets[s * 2 + 1] * zDy) > stored) {
+                    passed |= 1 << s;
+                }
+            }
+        }
+        return passed;
     }
 
+    /**
+     * Writes one shaded color to the samples that passed. A pixel all of whose samples passed becomes or stays compact,
+     * any other gets a slot in the pool first, filled from its compact color and depth. Without a free slot it stays
+     * compact and takes the color only if most samples passed.
+     */
+    private void writeSamples(int pixelIndex, int passed, int color, float z, float zDx, float zDy) {
+        int slot = sampleSlots[pixelIndex];
+        if (passed == sampleMask) {
+            sampleSlots[pixelIndex] = -1;
+            resolvePending[pixelIndex] = false;
+            pixelData[pixelIndex] = color;
+            depthBuffer[pixelIndex] = depthKey(z);
+            return;
+        }
+        if (slot < 0) {
+            slot = allocateSamples();
+            if (slot < 0) {
+                if (Integer.bitCount(passed) * 2 >= samples) {
+                    pixelData[pixelIndex] = color;
+                    depthBuffer[pixelIndex] = depthKey(z);
+                }
+                return;
+            }
+            Arrays.fill(sampleColors, slot * samples, (slot + 1) * samples, pixelData[pixelIndex]);
+            Arrays.fill(sampleDepths, slot * samples, (slot + 1) * samples, depthBuffer[pixelIndex]);
+            sampleSlots[pixelIndex] = slot;
+        }
+        // the pixel's depth is its farthest sample, which keeps the Hi-Z conservative
+        int base = slot * samples, farthest = Integer.MAX_VALUE;
+        for (int s = 0; s < samples; s++) {
+            if ((passed >> s & 1) != 0) {
+                sampleColors[base + s] = color;
+                sampleDepths[base + s] = depthKey(z + sampleOffsets[s * 2] * zDx + sampleOffsets[s * 2 + 1] * zDy);
+            }
+            farthest = Math.min(farthest, sampleDepths[base + s]);
+        }
+        depthBuffer[pixelIndex] = farthest;
+        resolvePending[pixelIndex] = true;
+    }
+
+    /**
+     * Allocates the {@link #gBuffer} and takes the camera position for {@link #lighting} from the view matrix, before
+     * lit meshes are transformed and rasterized.
+     *
+     * @return false if there is no lighting
+     */
+    public boolean prepareLighting() {
+        if (lighting == null) {
+            return false;
+        }
+        if (gBuffer == null) {
+            // as large as the pixels, which may be more than width * height after a resize
+            gBuffer = new float[pixelData.length * Lighting.SURFACE_STRIDE];
+            shadePending = new boolean[pixelData.length];
+        }
+        lighting.prepare(viewMatrix);
+        return true;
+    }
+
+    /**
+     * Lights every pixel of the inclusive rectangle written by a lit mesh since it was last shaded, exactly once no
+     * matter how often it was overdrawn. Disjoint rectangles may be shaded concurrently.
+     */
+    public void shade(int minX, int minY, int maxX, int maxY) {
+        Lighting lighting = this.lighting;
+        if (lighting == null || shadePending == null) {
+            return;
+        }
+        int shaded = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int index = minX + y * width, end = maxX + y * width; index <= end; index++) {
+                if (shadePending[index]) {
+                    shadePending[index] = false;
+                    pixelData[index] = lighting.shade(pixelData[index], gBuffer, index * Lighting.SURFACE_STRIDE);
+                    shaded++;
+                }
+            }
+        }
+        FrameProfiler.count(FrameProfiler.Counter.PIXELS_LIT, shaded);
+    }
+
+    /**
+     * Switches the depth format and clears depth and Hi-Z.
+     * INT16 and INT24 spread their values over 1 / w between the clip planes, so most of them go to the distances
+     * right behind clipNear: a step is about w * w / (clipNear * 2^bits) apart at distance w. They need clipFar / clipNear
+     * at most 2^(bits - 4), which leaves at least 16 values for the farther half of the range, and clipNear as far
+     * out as the scene allows. Keep both planes while the format is in use.
+     */
+    public void setDepthFormat(DepthFormat format) {
+        if (format.bits != 0 && !(clipNear > 0 && clipFar / clipNear <= 1 << (format.bits - 4))) {
+            throw new IllegalArgumentException("Expected clipFar / clipNear of at most " + (1 << (format.bits - 4)) + " for " + format
+                    + ", got " + clipNear + " to " + clipFar);
+        }
+        depthFormat = format;
+        depthMax = (1 << format.bits) - 1;
+        depthEpoch = 0;
+        depthBase = 0;
+        Arrays.fill(depthBuffer, 0);
+        Arrays.fill(hiZ, 0);
+        Arrays.fill(hiZStale, false);
+    }
+
+    public DepthFormat getDepthFormat() {
+        return depthFormat;
+    }
+
+    /**
+     * Clears depth of the integer formats by starting a new epoch: every value left from an earlier one is below
+     * {@link #depthBase} and so farther than anything drawn from now on. Once the epoch bits run out, and for the
+     * float formats, the memory itself has to be cleared.
+     *
+     * @return true if depth is clear now, false if the caller still has to fill it with 0
+     */
+    public boolean nextDepthEpoch() {
+        int bits = depthFormat.bits;
+        if (bits == 0 || depthEpoch == (1 << (31 - bits)) - 1) {
+            depthEpoch = 0;
+            depthBase = 0;
+            return false;
+        }
+        depthEpoch++;
+        depthBase = depthEpoch << bits;
+        return true;
+    }
+
+    /**
+     * Depth of a projected vertex in the units triangles are interpolated in and the Hi-Z is kept in:
+     * z / w for FLOAT, clipNear / w for REVERSED_Z and 1 / w scaled from 0 at clipFar to the largest integer value at
+     * clipNear for INT16 and INT24. All of them are linear in screen space.
+     */
+    public float depth(float z, float inverseW) {
+        if (depthFormat == DepthFormat.FLOAT) {
+            return z;
+        }
+        if (depthFormat == DepthFormat.REVERSED_Z) {
+            return clipNear * inverseW;
+        }
+        return (inverseW - 1 / clipFar) * (clipNear * clipFar / (clipFar - clipNear) * depthMax);
+    }
+
+    /**
+     * @return the depth buffer value of an interpolated {@link #depth}
+     */
+    public int depthKey(float depth) {
+        return depthFormat.bits == 0 ? Float.floatToRawIntBits(depth) : depthBase + Math.min(depthMax, (int) depth);
+    }
+
+    /**
+     * @return the {@link #depth} a depth buffer value stands for, 0 for values cleared by a later epoch
+     */
+    public float depthValue(int key) {
+        if (depthFormat.bits == 0) {
+            return Float.intBitsToFloat(key);
+        }
+        return key < depthBase ? 0 : key - depthBase;
+    }
+
+    /**
+     * Sets the inclusive rectangle {@link #draw} presents, the part of the frame that differs from the frame presented
+     * before it. Set to the whole buffer by every clear and by {@link TileRenderer#begin}, narrowed by incremental
+     * {@link TileRenderer#end}.
+     */
+    public void setDirty(int minX, int minY, int maxX, int maxY) {
+        dirtyMinX = minX;
+        dirtyMinY = minY;
+        dirtyMaxX = maxX;
+        dirtyMaxY = maxY;
+    }
+
+    /**
+     * Grows the dirty rectangle to include the one of {@code other}, e.g. a frame dropped before it was presented.
+     */
+    public void addDirty(Buffer other) {
+        if (!other.isDirty()) {
+            return;
+        }
+        if (!isDirty()) {
+            setDirty(other.dirtyMinX, other.dirtyMinY, other.dirtyMaxX, other.dirtyMaxY);
+            return;
+        }
+        setDirty(Math.min(dirtyMinX, other.dirtyMinX), Math.min(dirtyMinY, other.dirtyMinY), Math.max(dirtyMaxX, other.dirtyMaxX), Math.max(dirtyMaxY, other.dirtyMaxY));
+    }
+
+    public boolean isDirty() {
+        return dirtyMinX <= dirtyMaxX && dirtyMinY <= dirtyMaxY;
+    }
+
+    /**
+     * Presents the frame scaled to width x height, only its dirty rectangle when it is drawn at its own size.
+     */
     public void draw(Graphics g, int width, int height) {
 
         boolean debug = false;
@@ -65,7 +679,7 @@ public class Buffer {
                 for (int i = 0; i < width; i++) {
                     for (int j = 0; j < height; j++) {
 
-                        float raw = depthBuffer[i + j * width];
+                        float raw = depthValue(depthBuffer[i + j * width]);
                         if (raw > 255) {
                             raw = 255;
                         }
@@ -77,7 +691,21 @@ public class Buffer {
             }
         }
 
-        g.drawImage(image, 0, 0, width, height, null);
+        long start = FrameProfiler.start();
+        boolean scaled = width != this.width || height != this.height;
+        if (g instanceof Graphics2D && scaled) {
+            // upscaling a lower resolution frame, nearest neighbour keeps the blit a plain native scaling loop
+            ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        }
+        if (scaled || dirtyMinX <= 0 && dirtyMinY <= 0 && dirtyMaxX >= width - 1 && dirtyMaxY >= height - 1) {
+            // a part of a scaled frame would not land on exactly the pixels the whole frame scaled to
+            g.drawImage(image, 0, 0, width, height, null);
+        } else if (isDirty()) {
+            int minX = Math.max(0, dirtyMinX), minY = Math.max(0, dirtyMinY);
+            int maxX = Math.min(width, dirtyMaxX + 1), maxY = Math.min(height, dirtyMaxY + 1);
+            g.drawImage(image, minX, minY, maxX, maxY, minX, minY, maxX, maxY, null);
+        }
+        FrameProfiler.stage(FrameProfiler.Stage.PRESENT, start);
     }
 
     public void drawLine(Color color, int x1, int y1, int x2, int y2) {
@@ -128,11 +756,12 @@ public class Buffer {
     }
 
     public void drawFilledTriangle(Texture texture, float[] vertices, int[] indices, float[] normals, float[] textureCoords) {
+        boolean lit = normals != null && prepareLighting();
         for (int i = 0; i < indices.length; i += 3) {
             // Apply vertex transformation
-            VertexInfo vertex0 = transformVertex(vertices, normals, textureCoords, indices[i + 0]);
-            VertexInfo vertex1 = transformVertex(vertices, normals, textureCoords, indices[i + 1]);
-            VertexInfo vertex2 = transformVertex(vertices, normals, textureCoords, indices[i + 2]);
+            VertexInfo vertex0 = transformVertex(vertices, lit ? normals : null, textureCoords, indices[i + 0], vertexInfos[0]);
+            VertexInfo vertex1 = transformVertex(vertices, lit ? normals : null, textureCoords, indices[i + 1], vertexInfos[1]);
+            VertexInfo vertex2 = transformVertex(vertices, lit ? normals : null, textureCoords, indices[i + 2], vertexInfos[2]);
 
             int x0 = (int) vertex0.position.x;
             int y0 = (int) vertex0.position.y;
@@ -143,34 +772,45 @@ public class Buffer {
             int x2 = (int) vertex2.position.x;
             int y2 = (int) vertex2.position.y;
 
-            float z0 = vertex0.position.z;
-            float z1 = vertex1.position.z;
-            float z2 = vertex2.position.z;
+            float z0 = depth(vertex0.position.z, 1 / vertex0.position.w);
+            float z1 = depth(vertex1.position.z, 1 / vertex1.position.w);
+            float z2 = depth(vertex2.position.z, 1 / vertex2.position.w);
+
+            // this path does not clip, triangles crossing the near or far plane are dropped (see setupTriangle)
+            if (!insideDepthRange(vertex0.position.w) || !insideDepthRange(vertex1.position.w) || !insideDepthRange(vertex2.position.w)) {
+                continue;
+            }
 
-            // Iterate over the bounding box of the triangle
-            for (int pixelY = Math.min(y0, Math.min(y1, y2)); pixelY <= Math.max(y0, Math.max(y1, y2)); pixelY++) {
-                for (int pixelX = Math.min(x0, Math.min(x1, x2)); pixelX <=  Math.max(x0, Math.max(x1, x2)); pixelX++) {
+            // Iterate over the bounding box of the triangle, scissored to the viewport
+            int minX = Math.max(0, Math.min(x0, Math.min(x1, x2)));
+            int maxX = Math.min(width - 1, Math.max(x0, Math.max(x1, x2)));
+            int minY = Math.max(0, Math.min(y0, Math.min(y1, y2)));
+            int maxY = Math.min(height - 1, Math.max(y0, Math.max(y1, y2)));
+            for (int pixelY = minY; pixelY <= maxY; pixelY++) {
+                for (int pixelX = minX; pixelX <= maxX; pixelX++) {
                     if (((x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0)) < 0) { // front face checking
-                        float[] barycentric = calculateBarycentricCoordinates(vertex0.position, vertex1.position, vertex2.position, pixelX, pixelY);
+                        calculateBarycentricCoordinates(vertex0.position, vertex1.position, vertex2.position, pixelX, pixelY, barycentric);
                         if (barycentric[0] >= 0 && barycentric[1] >= 0 && barycentric[2] >= 0) {
 
-                            float interpolatedZ = interpolateBarycentric(z0, z1, z2, barycentric);
+                            int depth = depthKey(interpolateBarycentric(z0, z1, z2, barycentric));
                             int pixelIndex = pixelX + pixelY * width;
-                            if (pixelIndex < 0 || pixelIndex > depthBuffer.length - 1) {
-                                continue;
-                            }
-
-                            if (interpolatedZ > depthBuffer[pixelIndex]) {
-//                                float normalX = interpolateBarycentric(vertex0.normal.x, vertex1.normal.x, vertex2.normal.x, barycentric);
-//                                float normalY = interpolateBarycentric(vertex0.normal.y, vertex1.normal.y, vertex2.normal.y, barycentric);
-//                                float normalZ = interpolateBarycentric(vertex0.normal.z, vertex1.normal.z, vertex2.normal.z, barycentric);
 
+                            if (depth > depthBuffer[pixelIndex]) {
                                 float textureU = interpolateBarycentric(vertex0.textureU, vertex1.textureU, vertex2.textureU, barycentric);
                                 float textureV = interpolateBarycentric(vertex0.textureV, vertex1.textureV, vertex2.textureV, barycentric);
                                 int pixel = texture.getPixel(textureU * texture.width, textureV * texture.height);
                                 if (pixel >> 24 != 0) {
-                                    depthBuffer[pixelIndex] = (int) interpolatedZ;
+                                    depthBuffer[pixelIndex] = depth;
                                     pixelData[pixelIndex] = pixel;
+                                    if (lit) {
+                                        int surface = pixelIndex * Lighting.SURFACE_STRIDE;
+                                        for (int k = 0; k < Lighting.SURFACE_STRIDE; k++) {
+                                            gBuffer[surface + k] = interpolateBarycentric(vertex0.surface[k], vertex1.surface[k], vertex2.surface[k], barycentric);
+                                        }
+                                        shadePending[pixelIndex] = true;
+                                    } else if (shadePending != null) {
+                                        shadePending[pixelIndex] = false;
+                                    }
                                 }
                             }
                         }
@@ -178,188 +818,692 @@ public class Buffer {
                 }
             }
         }
+        if (lit) {
+            shade(0, 0, width - 1, height - 1);
+        }
+    }
+
+    private boolean insideDepthRange(float w) {
+        return w >= clipNear && w <= clipFar;
     }
 
     private static class VertexInfo {
 
-        protected Vector4f position;
-        protected Vector4f normal;
+        protected final Vector4f position = new Vector4f();
+        protected final Vector4f normal = new Vector4f();
+        protected boolean hasNormal;
         protected float textureU, textureV;
-
-        public VertexInfo(Vector4f position, Vector4f normal, float textureU, float textureV) {
-            this.position = position;
-            this.normal = normal;
-            this.textureU = textureU;
-            this.textureV = textureV;
-        }
+        // world normal and position, or the light reaching the vertex, see Lighting#SURFACE_STRIDE
+        protected final float[] surface = new float[Lighting.SURFACE_STRIDE];
     }
 
-    private VertexInfo transformVertex(float[] vertices, float[] normals, float[] textureCoords, int index) {
-        Vector4f vertex = new Vector4f(vertices[index * 3], vertices[index * 3 + 1], vertices[index * 3 + 2], 1.0f);
+    private VertexInfo transformVertex(float[] vertices, float[] normals, float[] textureCoords, int index, VertexInfo out) {
+        Vector4f vertex = out.position;
+        vertex.x = vertices[index * 3];
+        vertex.y = vertices[index * 3 + 1];
+        vertex.z = vertices[index * 3 + 2];
+        vertex.w = 1.0f;
         modelMatrix.transform(vertex);
+        float worldX = vertex.x, worldY = vertex.y, worldZ = vertex.z;
         viewMatrix.transform(vertex);
         projectionMatrix.transform(vertex);
 
-        Vector4f normal = null;
-        if (normalMatrix != null) {
-            // Transform normal
-            normal = new Vector4f(normals[index * 3], normals[index * 3 + 1], normals[index * 3 + 2], 0.0f);  // Ensure it's a 4D vector
-            normal = normal.mul(normalMatrix);  // Apply the normal matrix
-            normal = normal.normalize();  // Normalize the normal vector
+        // normals are only passed in for lighting
+        out.hasNormal = normals != null;
+        if (out.hasNormal) {
+            // Transform normal, the model matrix stands in for a missing normal matrix
+            Vector4f normal = out.normal;
+            normal.x = normals[index * 3];
+            normal.y = normals[index * 3 + 1];
+            normal.z = normals[index * 3 + 2];
+            normal.w = 0.0f;  // Ensure it's a 4D vector
+            normal.mul(normalMatrix != null ? normalMatrix : modelMatrix);  // Apply the normal matrix
+            normal.w = 0.0f;
+            normal.normalize();  // Normalize the normal vector
+            if (lighting.mode == Lighting.Mode.GOURAUD) {
+                lighting.light(normal.x, normal.y, normal.z, worldX, worldY, worldZ, out.surface, 0);
+            } else {
+                out.surface[0] = normal.x;
+                out.surface[1] = normal.y;
+                out.surface[2] = normal.z;
+                out.surface[3] = worldX;
+                out.surface[4] = worldY;
+                out.surface[5] = worldZ;
+            }
         }
 
         vertex.x /= vertex.w;
         vertex.y /= vertex.w;
         vertex.z /= vertex.w;
 
-        int x = (int) ((vertex.x + 1.0) * width / 2.0);
-        int y = (int) ((1.0 - vertex.y) * height / 2.0);
+        vertex.x = (int) ((vertex.x + 1.0) * width / 2.0);
+        vertex.y = (int) ((1.0 - vertex.y) * height / 2.0);
 
-        return new VertexInfo(new Vector4f(x, y, vertex.z, vertex.w), normal, textureCoords[index * 2], textureCoords[index * 2 + 1]);
+        out.textureU = textureCoords[index * 2];
+        out.textureV = textureCoords[index * 2 + 1];
+        return out;
     }
 
-    private float[] calculateBarycentricCoordinates(Vector4f vec0, Vector4f vec1, Vector4f vec2, int x, int y) {
+    private void calculateBarycentricCoordinates(Vector4f vec0, Vector4f vec1, Vector4f vec2, int x, int y, float[] barycentric) {
         float detT = (vec1.y - vec2.y) * (vec0.x - vec2.x) + (vec2.x - vec1.x) * (vec0.y - vec2.y);
         float alpha = ((vec1.y - vec2.y) * (x - vec2.x) + (vec2.x - vec1.x) * (y - vec2.y)) / detT;
         float beta = ((vec2.y - vec0.y) * (x - vec2.x) + (vec0.x - vec2.x) * (y - vec2.y)) / detT;
         float gamma = 1 - alpha - beta;
 
-        return new float[]{alpha, beta, gamma};
+        barycentric[0] = alpha;
+        barycentric[1] = beta;
+        barycentric[2] = gamma;
     }
 
     private float interpolateBarycentric(float v0, float v1, float v2, float[] barycentric) {
         return v0 * barycentric[0] + v1 * barycentric[1] + v2 * barycentric[2];
     }
 
+    /**
+     * Immediate counterpart of TileRenderer: transforms every vertex of the mesh once, then sets up and
+     * rasterizes the triangles of [start, count) on the calling thread.
+     */
     public void drawFilledTriangleInline(Texture texture, float[] vertices, int[] indices, float[] normals, float[] textureCoords, int start, int count) {
+        long stageStart = FrameProfiler.start();
+        mvp.set(projectionMatrix).mul(viewMatrix).mul(modelMatrix);
+        boolean lit = normals != null && prepareLighting();
+        vertexStage.setLighting(lit ? lighting : null, modelMatrix, normals);
+        vertexStage.prepare(vertices.length / 3);
+        vertexStage.transform(mvp, vertices, textureCoords, 0, vertices.length / 3, width, height, clipNear, clipFar);
+        stageStart = FrameProfiler.stage(FrameProfiler.Stage.VERTEX, stageStart);
+        int submitted = 0, rasterized = 0;
         for (int i = start; i < count; i += 3) {
             if (i > indices.length - 1) {
                 break;
             }
-            // Трансформация первой вершины
-            int idx0 = indices[i] * 3;
-            float x0 = vertices[idx0];
-            float y0 = vertices[idx0 + 1];
-            float z0 = vertices[idx0 + 2];
-            float w0 = 1.0f;
-
-            // modelMatrix multiplication
-            float mx0 = modelMatrix.m00() * x0 + modelMatrix.m10() * y0 + modelMatrix.m20() * z0 + modelMatrix.m30() * w0;
-            float my0 = modelMatrix.m01() * x0 + modelMatrix.m11() * y0 + modelMatrix.m21() * z0 + modelMatrix.m31() * w0;
-            float mz0 = modelMatrix.m02() * x0 + modelMatrix.m12() * y0 + modelMatrix.m22() * z0 + modelMatrix.m32() * w0;
-            float mw0 = modelMatrix.m03() * x0 + modelMatrix.m13() * y0 + modelMatrix.m23() * z0 + modelMatrix.m33() * w0;
-
-            // viewMatrix multiplication
-            float vx0 = viewMatrix.m00() * mx0 + viewMatrix.m10() * my0 + viewMatrix.m20() * mz0 + viewMatrix.m30() * mw0;
-            float vy0 = viewMatrix.m01() * mx0 + viewMatrix.m11() * my0 + viewMatrix.m21() * mz0 + viewMatrix.m31() * mw0;
-            float vz0 = viewMatrix.m02() * mx0 + viewMatrix.m12() * my0 + viewMatrix.m22() * mz0 + viewMatrix.m32() * mw0;
-            float vw0 = viewMatrix.m03() * mx0 + viewMatrix.m13() * my0 + viewMatrix.m23() * mz0 + viewMatrix.m33() * mw0;
-
-            // projectionMatrix multiplication
-            float px0 = projectionMatrix.m00() * vx0 + projectionMatrix.m10() * vy0 + projectionMatrix.m20() * vz0 + projectionMatrix.m30() * vw0;
-            float py0 = projectionMatrix.m01() * vx0 + projectionMatrix.m11() * vy0 + projectionMatrix.m21() * vz0 + projectionMatrix.m31() * vw0;
-            float pz0 = projectionMatrix.m02() * vx0 + projectionMatrix.m12() * vy0 + projectionMatrix.m22() * vz0 + projectionMatrix.m32() * vw0;
-            float pw0 = projectionMatrix.m03() * vx0 + projectionMatrix.m13() * vy0 + projectionMatrix.m23() * vz0 + projectionMatrix.m33() * vw0;
-
-            px0 /= pw0;
-            py0 /= pw0;
-            pz0 /= pw0;
-            int screenX0 = (int) ((px0 + 1.0f) * width / 2.0f);
-            int screenY0 = (int) ((1.0f - py0) * height / 2.0f);
-            float texU0 = textureCoords[indices[i] * 2];
-            float texV0 = textureCoords[indices[i] * 2 + 1];
-
-            // Трансформация второй вершины
-            int idx1 = indices[i + 1] * 3;
-            float x1 = vertices[idx1];
-            float y1 = vertices[idx1 + 1];
-            float z1 = vertices[idx1 + 2];
-            float w1 = 1.0f;
-
-            float mx1 = modelMatrix.m00() * x1 + modelMatrix.m10() * y1 + modelMatrix.m20() * z1 + modelMatrix.m30() * w1;
-            float my1 = modelMatrix.m01() * x1 + modelMatrix.m11() * y1 + modelMatrix.m21() * z1 + modelMatrix.m31() * w1;
-            float mz1 = modelMatrix.m02() * x1 + modelMatrix.m12() * y1 + modelMatrix.m22() * z1 + modelMatrix.m32() * w1;
-            float mw1 = modelMatrix.m03() * x1 + modelMatrix.m13() * y1 + modelMatrix.m23() * z1 + modelMatrix.m33() * w1;
-
-            float vx1 = viewMatrix.m00() * mx1 + viewMatrix.m10() * my1 + viewMatrix.m20() * mz1 + viewMatrix.m30() * mw1;
-            float vy1 = viewMatrix.m01() * mx1 + viewMatrix.m11() * my1 + viewMatrix.m21() * mz1 + viewMatrix.m31() * mw1;
-            float vz1 = viewMatrix.m02() * mx1 + viewMatrix.m12() * my1 + viewMatrix.m22() * mz1 + viewMatrix.m32() * mw1;
-            float vw1 = viewMatrix.m03() * mx1 + viewMatrix.m13() * my1 + viewMatrix.m23() * mz1 + viewMatrix.m33() * mw1;
-
-            float px1 = projectionMatrix.m00() * vx1 + projectionMatrix.m10() * vy1 + projectionMatrix.m20() * vz1 + projectionMatrix.m30() * vw1;
-            float py1 = projectionMatrix.m01() * vx1 + projectionMatrix.m11() * vy1 + projectionMatrix.m21() * vz1 + projectionMatrix.m31() * vw1;
-            float pz1 = projectionMatrix.m02() * vx1 + projectionMatrix.m12() * vy1 + projectionMatrix.m22() * vz1 + projectionMatrix.m32() * vw1;
-            float pw1 = projectionMatrix.m03() * vx1 + projectionMatrix.m13() * vy1 + projectionMatrix.m23() * vz1 + projectionMatrix.m33() * vw1;
-
-            px1 /= pw1;
-            py1 /= pw1;
-            pz1 /= pw1;
-            int screenX1 = (int) ((px1 + 1.0f) * width / 2.0f);
-            int screenY1 = (int) ((1.0f - py1) * height / 2.0f);
-            float texU1 = textureCoords[indices[i + 1] * 2];
-            float texV1 = textureCoords[indices[i + 1] * 2 + 1];
-
-            // Трансформация третьей вершины
-            int idx2 = indices[i + 2] * 3;
-            float x2 = vertices[idx2];
-            float y2 = vertices[idx2 + 1];
-            float z2 = vertices[idx2 + 2];
-            float w2 = 1.0f;
-
-            float mx2 = modelMatrix.m00() * x2 + modelMatrix.m10() * y2 + modelMatrix.m20() * z2 + modelMatrix.m30() * w2;
-            float my2 = modelMatrix.m01() * x2 + modelMatrix.m11() * y2 + modelMatrix.m21() * z2 + modelMatrix.m31() * w2;
-            float mz2 = modelMatrix.m02() * x2 + modelMatrix.m12() * y2 + modelMatrix.m22() * z2 + modelMatrix.m32() * w2;
-            float mw2 = modelMatrix.m03() * x2 + modelMatrix.m13() * y2 + modelMatrix.m23() * z2 + modelMatrix.m33() * w2;
-
-            float vx2 = viewMatrix.m00() * mx2 + viewMatrix.m10() * my2 + viewMatrix.m20() * mz2 + viewMatrix.m30() * mw2;
-            float vy2 = viewMatrix.m01() * mx2 + viewMatrix.m11() * my2 + viewMatrix.m21() * mz2 + viewMatrix.m31() * mw2;
-            float vz2 = viewMatrix.m02() * mx2 + viewMatrix.m12() * my2 + viewMatrix.m22() * mz2 + viewMatrix.m32() * mw2;
-            float vw2 = viewMatrix.m03() * mx2 + viewMatrix.m13() * my2 + viewMatrix.m23() * mz2 + viewMatrix.m33() * mw2;
-
-            float px2 = projectionMatrix.m00() * vx2 + projectionMatrix.m10() * vy2 + projectionMatrix.m20() * vz2 + projectionMatrix.m30() * vw2;
-            float py2 = projectionMatrix.m01() * vx2 + projectionMatrix.m11() * vy2 + projectionMatrix.m21() * vz2 + projectionMatrix.m31() * vw2;
-            float pz2 = projectionMatrix.m02() * vx2 + projectionMatrix.m12() * vy2 + projectionMatrix.m22() * vz2 + projectionMatrix.m32() * vw2;
-            float pw2 = projectionMatrix.m03() * vx2 + projectionMatrix.m13() * vy2 + projectionMatrix.m23() * vz2 + projectionMatrix.m33() * vw2;
-
-            px2 /= pw2;
-            py2 /= pw2;
-            pz2 /= pw2;
-            int screenX2 = (int) ((px2 + 1.0f) * width / 2.0f);
-            int screenY2 = (int) ((1.0f - py2) * height / 2.0f);
-            float texU2 = textureCoords[indices[i + 2] * 2];
-            float texV2 = textureCoords[indices[i + 2] * 2 + 1];
-
-            // Bounding box и рендеринг
-            int minX = Math.min(screenX0, Math.min(screenX1, screenX2));
-            int maxX = Math.max(screenX0, Math.max(screenX1, screenX2));
-            int minY = Math.min(screenY0, Math.min(screenY1, screenY2));
-            int maxY = Math.max(screenY0, Math.max(screenY1, screenY2));
-
-            if (((screenX1 - screenX0) * (screenY2 - screenY0) - (screenX2 - screenX0) * (screenY1 - screenY0)) < 0) {
-                for (int pixelY = minY; pixelY <= maxY; pixelY++) {
-                    for (int pixelX = minX; pixelX <= maxX; pixelX++) {
-                        float detT = (screenY1 - screenY2) * (screenX0 - screenX2) + (screenX2 - screenX1) * (screenY0 - screenY2);
-                        float alpha = ((screenY1 - screenY2) * (pixelX - screenX2) + (screenX2 - screenX1) * (pixelY - screenY2)) / detT;
-                        float beta = ((screenY2 - screenY0) * (pixelX - screenX2) + (screenX0 - screenX2) * (pixelY - screenY2)) / detT;
-                        float gamma = 1 - alpha - beta;
-
-                        if (alpha >= 0 && beta >= 0 && gamma >= 0) {
-                            float interpolatedZ = pz0 * alpha + pz1 * beta + pz2 * gamma;
-                            int pixelIndex = pixelX + pixelY * width;
+            submitted++;
+            int triangleCount = setupTriangle(vertexStage, indices, i, clipper, triangleScratch, 0);
+            if (triangleCount > 0) {
+                rasterized++;
+            }
+            for (int t = 0; t < triangleCount; t++) {
+                rasterizeTriangle(texture, NO_TINT, lit, triangleScratch, t * TRIANGLE_STRIDE, 0, 0, width - 1, height - 1);
+            }
+        }
+        FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_SUBMITTED, submitted);
+        FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_CULLED, submitted - rasterized);
+        FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_RASTERIZED, rasterized);
+        // setup and rasterization interleave per triangle here, both count as raster
+        stageStart = FrameProfiler.stage(FrameProfiler.Stage.RASTER, stageStart);
+        if (samples > 1) {
+            resolve(0, 0, width - 1, height - 1);
+            stageStart = FrameProfiler.stage(FrameProfiler.Stage.RESOLVE, stageStart);
+        }
+        if (lit) {
+            shade(0, 0, width - 1, height - 1);
+            FrameProfiler.stage(FrameProfiler.Stage.SHADE, stageStart);
+        }
+    }
 
-                            if (pixelIndex >= 0 && pixelIndex < depthBuffer.length && interpolatedZ > depthBuffer[pixelIndex]) {
-                                float textureU = texU0 * alpha + texU1 * beta + texU2 * gamma;
-                                float textureV = texV0 * alpha + texV1 * beta + texV2 * gamma;
-                                int pixel = texture.getPixel(textureU * texture.width, textureV * texture.height);
-                                if (pixel >> 24 != 0) {
-                                    depthBuffer[pixelIndex] = interpolatedZ;
-                                    pixelData[pixelIndex] = pixel;
+    /**
+     * @return {@code pixel} with every color channel multiplied by the matching channel of the 0xRRGGBB {@code tint}
+     */
+    public static int tint(int pixel, int tint) {
+        int red = ((pixel >> 16 & 0xff) * ((tint >> 16 & 0xff) + 1)) >> 8;
+        int green = ((pixel >> 8 & 0xff) * ((tint >> 8 & 0xff) + 1)) >> 8;
+        int blue = ((pixel & 0xff) * ((tint & 0xff) + 1)) >> 8;
+        return (pixel & 0xff000000) | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * Sets up the triangle starting at {@code indices[i]} from vertices already transformed by {@code stage}.
+     * Triangles crossing the near, far or guard band planes are clipped, the front facing pieces are packed
+     * into {@code out} at {@code offset}, {@link #TRIANGLE_STRIDE} floats each, see {@link #TRIANGLE_VERTEX}.
+     *
+     * @return number of triangles written, at most {@link Clipper#MAX_TRIANGLES}
+     */
+    public int setupTriangle(VertexStage stage, int[] indices, int i, Clipper clipper, float[] out, int offset) {
+        int index0 = indices[i], index1 = indices[i + 1], index2 = indices[i + 2];
+        int outcode0 = stage.outcodes[index0];
+        int outcode1 = stage.outcodes[index1];
+        int outcode2 = stage.outcodes[index2];
+        if ((outcode0 & outcode1 & outcode2) != 0) {
+            return 0;
+        }
+
+        float[] data = stage.data;
+        if ((outcode0 | outcode1 | outcode2) == 0) {
+            int o0 = index0 * VertexStage.STRIDE, o1 = index1 * VertexStage.STRIDE, o2 = index2 * VertexStage.STRIDE;
+            if (((data[o1] - data[o0]) * (data[o2 + 1] - data[o0 + 1]) - (data[o2] - data[o0]) * (data[o1 + 1] - data[o0 + 1])) >= 0) { // front face checking
+                return 0;
+            }
+            packVertex(data, o0, out, offset);
+            packVertex(data, o1, out, offset + TRIANGLE_VERTEX);
+            packVertex(data, o2, out, offset + TRIANGLE_VERTEX * 2);
+            return 1;
+        }
+
+        float[] polygon = clipper.vertices;
+        loadClipVertex(data, index0 * VertexStage.STRIDE, polygon, 0);
+        loadClipVertex(data, index1 * VertexStage.STRIDE, polygon, Clipper.VERTEX_STRIDE);
+        loadClipVertex(data, index2 * VertexStage.STRIDE, polygon, Clipper.VERTEX_STRIDE * 2);
+        int count = clipper.clip(3, outcode0 | outcode1 | outcode2, clipNear, clipFar);
+
+        for (int v = 0; v < count; v++) {
+            int o = v * Clipper.VERTEX_STRIDE;
+            float inverseW = 1.0f / polygon[o + 3];
+            polygon[o] = (polygon[o] * inverseW + 1.0f) * width / 2.0f;
+            polygon[o + 1] = (1.0f - polygon[o + 1] * inverseW) * height / 2.0f;
+            polygon[o + 2] = polygon[o + 2] * inverseW;
+            polygon[o + 3] = inverseW;
+        }
+
+        int written = 0;
+        for (int v = 1; v + 1 < count; v++) {
+            int o = offset + written * TRIANGLE_STRIDE;
+            packVertex(polygon, 0, out, o);
+            packVertex(polygon, v * Clipper.VERTEX_STRIDE, out, o + TRIANGLE_VERTEX);
+            packVertex(polygon, (v + 1) * Clipper.VERTEX_STRIDE, out, o + TRIANGLE_VERTEX * 2);
+
+            float screenX0 = out[o], screenY0 = out[o + 1];
+            float screenX1 = out[o + TRIANGLE_VERTEX], screenY1 = out[o + TRIANGLE_VERTEX + 1];
+            float screenX2 = out[o + TRIANGLE_VERTEX * 2], screenY2 = out[o + TRIANGLE_VERTEX * 2 + 1];
+            if (((screenX1 - screenX0) * (screenY2 - screenY0) - (screenX2 - screenX0) * (screenY1 - screenY0)) < 0) { // front face checking
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Copies screen x, y, depth, 1/w, texture u, v and the surface of a projected vertex. Projected clipper vertices
+     * and VertexStage entries share that layout, see {@link VertexStage#STRIDE}.
+     */
+    private static void packVertex(float[] vertex, int from, float[] out, int offset) {
+        System.arraycopy(vertex, from, out, offset, TRIANGLE_VERTEX);
+    }
+
+    private static void loadClipVertex(float[] data, int from, float[] polygon, int offset) {
+        polygon[offset] = data[from + VertexStage.CLIP];
+        polygon[offset + 1] = data[from + VertexStage.CLIP + 1];
+        polygon[offset + 2] = data[from + VertexStage.CLIP + 2];
+        polygon[offset + 3] = data[from + VertexStage.CLIP + 3];
+        polygon[offset + 4] = data[from + 4];
+        polygon[offset + 5] = data[from + 5];
+        System.arraycopy(data, from + VertexStage.SURFACE, polygon, offset + 6, Lighting.SURFACE_STRIDE);
+    }
+
+    /**
+     * Projects a model-space box (minX, minY, minZ, maxX, maxY, maxZ) and writes its scissored screen rectangle
+     * and nearest depth to {@code out} as minX, minY, maxX, maxY, nearestZ.
+     *
+     * @return false if the box crosses the near plane or misses the screen, nothing can be said about it then
+     */
+    public boolean projectBounds(Matrix4f mvp, float[] bounds, float[] out) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        float nearestZ = -Float.MAX_VALUE;
+        for (int i = 0; i < 8; i++) {
+            float x = bounds[(i & 1) * 3];
+            float y = bounds[1 + ((i >> 1) & 1) * 3];
+            float z = bounds[2 + ((i >> 2) & 1) * 3];
+            float w = mvp.m03() * x + mvp.m13() * y + mvp.m23() * z + mvp.m33();
+            if (!(w >= clipNear)) {
+                return false;
+            }
+            float screenX = ((mvp.m00() * x + mvp.m10() * y + mvp.m20() * z + mvp.m30()) / w + 1.0f) * width / 2.0f;
+            float screenY = (1.0f - (mvp.m01() * x + mvp.m11() * y + mvp.m21() * z + mvp.m31()) / w) * height / 2.0f;
+            minX = Math.min(minX, screenX);
+            minY = Math.min(minY, screenY);
+            maxX = Math.max(maxX, screenX);
+            maxY = Math.max(maxY, screenY);
+            nearestZ = Math.max(nearestZ, depth((mvp.m02() * x + mvp.m12() * y + mvp.m22() * z + mvp.m32()) / w, 1 / w));
+        }
+        if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+            return false;
+        }
+        out[0] = Math.max(0, (int) minX);
+        out[1] = Math.max(0, (int) minY);
+        out[2] = Math.min(width - 1, (int) maxX + 1);
+        out[3] = Math.min(height - 1, (int) maxY + 1);
+        out[4] = nearestZ;
+        return true;
+    }
+
+    /**
+     * Mesh level Hi-Z test with the current matrices, for the immediate drawing methods.
+     *
+     * @return true if nothing of the mesh can pass the depth test
+     */
+    public boolean isOccluded(StaticMeshLoader.Mesh mesh) {
+        mvp.set(projectionMatrix).mul(viewMatrix).mul(modelMatrix);
+        if (!projectBounds(mvp, mesh.bounds, boundsScratch)) {
+            return false;
+        }
+        if (isOccluded((int) boundsScratch[0], (int) boundsScratch[1], (int) boundsScratch[2], (int) boundsScratch[3], boundsScratch[4])) {
+            culledTriangles.add(mesh.indices.length / 3);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tests an inclusive, on-screen pixel rectangle against the Hi-Z, tightening stale blocks on the way.
+     *
+     * @return true if no depth up to {@code nearestZ} can pass the depth test anywhere in the rectangle
+     */
+    public boolean isOccluded(int minX, int minY, int maxX, int maxY, float nearestZ) {
+        for (int blockY = minY / BLOCK_SIZE; blockY <= maxY / BLOCK_SIZE; blockY++) {
+            for (int blockX = minX / BLOCK_SIZE; blockX <= maxX / BLOCK_SIZE; blockX++) {
+                int block = blockX + blockY * hiZWidth;
+                if (hiZ[block] < nearestZ && (!hiZStale[block] || refreshHiZ(block) < nearestZ)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private float refreshHiZ(int block) {
+        int fromX = (block % hiZWidth) * BLOCK_SIZE;
+        int fromY = (block / hiZWidth) * BLOCK_SIZE;
+        int toX = Math.min(width, fromX + BLOCK_SIZE);
+        int toY = Math.min(height, fromY + BLOCK_SIZE);
+        int farthest = Integer.MAX_VALUE;
+        for (int y = fromY; y < toY; y++) {
+            for (int index = fromX + y * width, end = toX + y * width; index < end; index++) {
+                farthest = Math.min(farthest, depthBuffer[index]);
+            }
+        }
+        hiZStale[block] = false;
+        return hiZ[block] = depthValue(farthest);
+    }
+
+    /**
+     * Rasterizes a triangle packed by {@link #setupTriangle}, touching only pixels inside the inclusive
+     * clip rectangle. Callers that own disjoint rectangles may run this concurrently.
+     * <p>
+     * Vertices are snapped to {@link #SUBPIXEL_BITS} fixed point and pixel centers are tested against
+     * incrementally stepped edge functions with a top-left fill rule, so triangles sharing an edge
+     * cover every pixel exactly once. Depth, 1/w and texture coordinates over w are stepped as planes,
+     * texture coordinates and the mip level of detail are recovered once per {@link #PERSPECTIVE_SPAN}.
+     * Triangles larger than a {@link #BLOCK_SIZE} block are first classified block by block, and every
+     * triangle or block that lies behind the {@link #hiZ} is skipped before touching its pixels.
+     */
+    public void rasterizeTriangle(Texture texture, float[] triangle, int offset, int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        rasterizeTriangle(texture, NO_TINT, triangle, offset, clipMinX, clipMinY, clipMaxX, clipMaxY);
+    }
+
+    /**
+     * Same as {@link #rasterizeTriangle(Texture, float[], int, int, int, int, int)} with the texture color
+     * multiplied by {@code tint}.
+     */
+    public void rasterizeTriangle(Texture texture, int tint, float[] triangle, int offset, int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        rasterizeTriangle(texture, tint, false, triangle, offset, clipMinX, clipMinY, clipMaxX, clipMaxY);
+    }
+
+    /**
+     * Same as {@link #rasterizeTriangle(Texture, int, float[], int, int, int, int, int)}, storing the perspective
+     * correct surface of every written pixel in the {@link #gBuffer} for {@link #shade} if {@code lit}.
+     */
+    public void rasterizeTriangle(Texture texture, int tint, boolean lit, float[] triangle, int offset, int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        boolean tinted = (tint & NO_TINT) != NO_TINT;
+        // the vector rows test a single sample per pixel
+        RowRasterizer rows = samples > 1 ? null : rowRasterizer;
+        boolean integerDepth = depthFormat.bits != 0;
+        int depthBase = this.depthBase, depthMax = this.depthMax;
+        int offset1 = offset + TRIANGLE_VERTEX;
+        int offset2 = offset + TRIANGLE_VERTEX * 2;
+        long x0 = Math.round(triangle[offset] * SUBPIXEL_ONE), y0 = Math.round(triangle[offset + 1] * SUBPIXEL_ONE);
+        long x1 = Math.round(triangle[offset1] * SUBPIXEL_ONE), y1 = Math.round(triangle[offset1 + 1] * SUBPIXEL_ONE);
+        long x2 = Math.round(triangle[offset2] * SUBPIXEL_ONE), y2 = Math.round(triangle[offset2 + 1] * SUBPIXEL_ONE);
+
+        // front faces have negative area in screen space, anything else is culled after snapping
+        long area = (x2 - x0) * (y1 - y0) - (x1 - x0) * (y2 - y0);
+        if (area <= 0) {
+            return;
+        }
+
+        // Bounding box of the pixel centers, with multisampling of the pixels whose samples it may cover, which lie
+        // up to half a pixel around their centers; scissored to the clip rectangle
+        boolean multisampled = samples > 1;
+        long left = Math.min(x0, Math.min(x1, x2)), right = Math.max(x0, Math.max(x1, x2));
+        long top = Math.min(y0, Math.min(y1, y2)), bottom = Math.max(y0, Math.max(y1, y2));
+        long centerBias = multisampled ? 0 : SUBPIXEL_HALF, firstBias = multisampled ? 0 : SUBPIXEL_ONE - 1;
+        int minX = Math.max(clipMinX, (int) ((left - centerBias + firstBias) >> SUBPIXEL_BITS));
+        int maxX = Math.min(clipMaxX, (int) ((right - centerBias) >> SUBPIXEL_BITS));
+        int minY = Math.max(clipMinY, (int) ((top - centerBias + firstBias) >> SUBPIXEL_BITS));
+        int maxY = Math.min(clipMaxY, (int) ((bottom - centerBias) >> SUBPIXEL_BITS));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Small triangles are tested against the Hi-Z as it is, large ones block by block below
+        float pz0 = depth(triangle[offset + 2], triangle[offset + 3]);
+        float pz1 = depth(triangle[offset1 + 2], triangle[offset1 + 3]);
+        float pz2 = depth(triangle[offset2 + 2], triangle[offset2 + 3]);
+        float nearestZ = Math.max(pz0, Math.max(pz1, pz2));
+        float farthestZ = Math.min(pz0, Math.min(pz1, pz2));
+        boolean hierarchical = maxX - minX >= BLOCK_SIZE && maxY - minY >= BLOCK_SIZE;
+        if (!hierarchical && isHiZOccluded(minX, minY, maxX, maxY, nearestZ)) {
+            culledTriangles.increment();
+            return;
+        }
+
+        // Edge functions walked in 0 -> 2 -> 1 order, which are positive inside a front face.
+        // edge21 weights vertex 0, edge02 weights vertex 1, edge10 weights vertex 2.
+        long stepX21 = y2 - y1, stepY21 = x1 - x2;
+        long stepX02 = y0 - y2, stepY02 = x2 - x0;
+        long stepX10 = y1 - y0, stepY10 = x0 - x1;
+
+        long startX = ((long) minX << SUBPIXEL_BITS) + SUBPIXEL_HALF;
+        long startY = ((long) minY << SUBPIXEL_BITS) + SUBPIXEL_HALF;
+        long row21 = (x1 - x2) * (startY - y2) - (y1 - y2) * (startX - x2) + fillBias(x2, y2, x1, y1);
+        long row02 = (x2 - x0) * (startY - y0) - (y2 - y0) * (startX - x0) + fillBias(x0, y0, x2, y2);
+        long row10 = (x0 - x1) * (startY - y1) - (y0 - y1) * (startX - x1) + fillBias(x1, y1, x0, y0);
+        // steps per 1/16 pixel, to reach the sample positions from the pixel center
+        long sampleX21 = stepX21, sampleY21 = stepY21, sampleX02 = stepX02, sampleY02 = stepY02, sampleX10 = stepX10, sampleY10 = stepY10;
+        stepX21 <<= SUBPIXEL_BITS;
+        stepY21 <<= SUBPIXEL_BITS;
+        stepX02 <<= SUBPIXEL_BITS;
+        stepY02 <<= SUBPIXEL_BITS;
+        stepX10 <<= SUBPIXEL_BITS;
+        stepY10 <<= SUBPIXEL_BITS;
+
+        // Attribute planes: a = a0 + (a1 - a0) * edge02 / area + (a2 - a0) * edge10 / area.
+        // Depth is already divided by w, texture coordinates are interpolated as u/w and v/w next to 1/w.
+        float inverseArea = 1.0f / area;
+        float q0 = triangle[offset + 3], q1 = triangle[offset1 + 3], q2 = triangle[offset2 + 3];
+        float s0 = triangle[offset + 4] * texture.width * q0, s1 = triangle[offset1 + 4] * texture.width * q1, s2 = triangle[offset2 + 4] * texture.width * q2;
+        float t0 = triangle[offset + 5] * texture.height * q0, t1 = triangle[offset1 + 5] * texture.height * q1, t2 = triangle[offset2 + 5] * texture.height * q2;
+        float zDx = ((pz1 - pz0) * stepX02 + (pz2 - pz0) * stepX10) * inverseArea;
+        float zDy = ((pz1 - pz0) * stepY02 + (pz2 - pz0) * stepY10) * inverseArea;
+        float qDx = ((q1 - q0) * stepX02 + (q2 - q0) * stepX10) * inverseArea;
+        float qDy = ((q1 - q0) * stepY02 + (q2 - q0) * stepY10) * inverseArea;
+        float sDx = ((s1 - s0) * stepX02 + (s2 - s0) * stepX10) * inverseArea;
+        float sDy = ((s1 - s0) * stepY02 + (s2 - s0) * stepY10) * inverseArea;
+        float tDx = ((t1 - t0) * stepX02 + (t2 - t0) * stepX10) * inverseArea;
+        float tDy = ((t1 - t0) * stepY02 + (t2 - t0) * stepY10) * inverseArea;
+        float weight1 = row02 * inverseArea, weight2 = row10 * inverseArea;
+        float zStart = pz0 + (pz1 - pz0) * weight1 + (pz2 - pz0) * weight2;
+        float qStart = q0 + (q1 - q0) * weight1 + (q2 - q0) * weight2;
+        float sStart = s0 + (s1 - s0) * weight1 + (s2 - s0) * weight2;
+        float tStart = t0 + (t1 - t0) * weight1 + (t2 - t0) * weight2;
+
+        // Large triangles are walked in BLOCK_SIZE aligned blocks classified by their corners: blocks outside
+        // any edge are skipped, blocks inside all edges are filled without coverage tests.
+        // Small ones are a single partial block covering the whole bounding box.
+        int blockStepX = hierarchical ? BLOCK_SIZE : maxX - minX + 1;
+        int blockStepY = hierarchical ? BLOCK_SIZE : maxY - minY + 1;
+        int firstBlockX = hierarchical ? minX & -BLOCK_SIZE : minX;
+        int firstBlockY = hierarchical ? minY & -BLOCK_SIZE : minY;
+        long blockMin21 = Math.min(0, stepX21 * (BLOCK_SIZE - 1)) + Math.min(0, stepY21 * (BLOCK_SIZE - 1));
+        long blockMax21 = Math.max(0, stepX21 * (BLOCK_SIZE - 1)) + Math.max(0, stepY21 * (BLOCK_SIZE - 1));
+        long blockMin02 = Math.min(0, stepX02 * (BLOCK_SIZE - 1)) + Math.min(0, stepY02 * (BLOCK_SIZE - 1));
+        long blockMax02 = Math.max(0, stepX02 * (BLOCK_SIZE - 1)) + Math.max(0, stepY02 * (BLOCK_SIZE - 1));
+        long blockMin10 = Math.min(0, stepX10 * (BLOCK_SIZE - 1)) + Math.min(0, stepY10 * (BLOCK_SIZE - 1));
+        long blockMax10 = Math.max(0, stepX10 * (BLOCK_SIZE - 1)) + Math.max(0, stepY10 * (BLOCK_SIZE - 1));
+        float blockMinZ = Math.min(0, zDx * (BLOCK_SIZE - 1)) + Math.min(0, zDy * (BLOCK_SIZE - 1));
+        float blockMaxZ = Math.max(0, zDx * (BLOCK_SIZE - 1)) + Math.max(0, zDy * (BLOCK_SIZE - 1));
+        float zSampleDx = zDx / SUBPIXEL_ONE, zSampleDy = zDy / SUBPIXEL_ONE;
+        // depth of the farthest and nearest sample relative to the pixel center, and how far the edge functions can
+        // change from the center to a sample, which is at most half a pixel along x and y
+        float zSampleMin = 0, zSampleMax = 0;
+        long margin21 = 0, margin02 = 0, margin10 = 0;
+        if (multisampled) {
+            zSampleMin = Float.MAX_VALUE;
+            zSampleMax = -Float.MAX_VALUE;
+            for (int sample = 0; sample < samples; sample++) {
+                float sampleZ = sampleOffsets[sample * 2] * zSampleDx + sampleOffsets[sample * 2 + 1] * zSampleDy;
+                zSampleMin = Math.min(zSampleMin, sampleZ);
+                zSampleMax = Math.max(zSampleMax, sampleZ);
+            }
+            // blocks are classified at their pixel centers, the samples reach half a pixel further
+            margin21 = (Math.abs(sampleX21) + Math.abs(sampleY21)) * SUBPIXEL_HALF;
+            margin02 = (Math.abs(sampleX02) + Math.abs(sampleY02)) * SUBPIXEL_HALF;
+            margin10 = (Math.abs(sampleX10) + Math.abs(sampleY10)) * SUBPIXEL_HALF;
+            float marginZ = (Math.abs(zDx) + Math.abs(zDy)) / 2;
+            blockMin21 -= margin21;
+            blockMax21 += margin21;
+            blockMin02 -= margin02;
+            blockMax02 += margin02;
+            blockMin10 -= margin10;
+            blockMax10 += margin10;
+            blockMinZ -= marginZ;
+            blockMaxZ += marginZ;
+        }
+
+        // fully covered blocks can raise their Hi-Z directly if no texel lookup can come back transparent
+        boolean solid = texture.opaque;
+        boolean drawn = false, hiZRejected = false;
+        // pixels that reached the depth test and were written, only read by the FrameProfiler
+        int tested = 0, shaded = 0;
+
+        for (int blockY = firstBlockY; blockY <= maxY; blockY += blockStepY) {
+            for (int blockX = firstBlockX; blockX <= maxX; blockX += blockStepX) {
+                boolean inside = false;
+                float cornerZ = 0;
+                int block = 0;
+                if (hierarchical) {
+                    long corner21 = row21 + (blockX - minX) * stepX21 + (blockY - minY) * stepY21;
+                    long corner02 = row02 + (blockX - minX) * stepX02 + (blockY - minY) * stepY02;
+                    long corner10 = row10 + (blockX - minX) * stepX10 + (blockY - minY) * stepY10;
+                    if (corner21 + blockMax21 < 0 || corner02 + blockMax02 < 0 || corner10 + blockMax10 < 0) {
+                        continue;
+                    }
+                    block = blockX / BLOCK_SIZE + blockY / BLOCK_SIZE * hiZWidth;
+                    cornerZ = zStart + (blockX - minX) * zDx + (blockY - minY) * zDy;
+                    if (Math.min(nearestZ, cornerZ + blockMaxZ) <= hiZ[block]) {
+                        hiZRejected = true;
+                        continue;
+                    }
+                    inside = corner21 + blockMin21 >= 0 && corner02 + blockMin02 >= 0 && corner10 + blockMin10 >= 0;
+                }
+                drawn = true;
+
+                int fromX = Math.max(blockX, minX), toX = Math.min(blockX + blockStepX - 1, maxX);
+                int fromY = Math.max(blockY, minY), toY = Math.min(blockY + blockStepY - 1, maxY);
+                int dx = fromX - minX, dy = fromY - minY;
+                long edgeRow21 = row21 + dx * stepX21 + dy * stepY21;
+                long edgeRow02 = row02 + dx * stepX02 + dy * stepY02;
+                long edgeRow10 = row10 + dx * stepX10 + dy * stepY10;
+                float zRow = zStart + dx * zDx + dy * zDy;
+                float qRow = qStart + dx * qDx + dy * qDy;
+                float sRow = sStart + dx * sDx + dy * sDy;
+                float tRow = tStart + dx * tDx + dy * tDy;
+
+                for (int pixelY = fromY; pixelY <= toY; pixelY++) {
+                    if (rows != null && !lit && rows.row(this, texture, tint, inside, fromX, pixelY, toX - fromX + 1, edgeRow21, edgeRow02, edgeRow10,
+                            stepX21, stepX02, stepX10, zRow, zDx, qRow, qDx, qDy, sRow, sDx, sDy, tRow, tDx, tDy)) {
+                        edgeRow21 += stepY21;
+                        edgeRow02 += stepY02;
+                        edgeRow10 += stepY10;
+                        zRow += zDy;
+                        qRow += qDy;
+                        sRow += sDy;
+                        tRow += tDy;
+                        continue;
+                    }
+                    long edge21 = edgeRow21, edge02 = edgeRow02, edge10 = edgeRow10;
+                    float interpolatedZ = zRow;
+                    float q = qRow, s = sRow, t = tRow;
+                    float w = 1.0f / q;
+                    float textureU = s * w, textureV = t * w;
+                    int pixelIndex = fromX + pixelY * width;
+                    for (int spanX = fromX; spanX <= toX; spanX += PERSPECTIVE_SPAN) {
+                        // texture coordinates one row below select the mip level together with the steps along the span
+                        float below = 1.0f / (q + qDy);
+                        float uDy = (s + sDy) * below - textureU;
+                        float vDy = (t + tDy) * below - textureV;
+
+                        // exact texture coordinates one pixel past the span, linear steps up to there
+                        int spanLength = Math.min(PERSPECTIVE_SPAN, toX - spanX + 1);
+                        q += qDx * spanLength;
+                        s += sDx * spanLength;
+                        t += tDx * spanLength;
+                        w = 1.0f / q;
+                        float spanReciprocal = SPAN_RECIPROCALS[spanLength];
+                        float uDx = (s * w - textureU) * spanReciprocal;
+                        float vDx = (t * w - textureV) * spanReciprocal;
+                        float lod = Texture.lod(Math.max(uDx * uDx + vDx * vDx, uDy * uDy + vDy * vDy));
+
+                        for (int i = 0; i < spanLength; i++, pixelIndex++) {
+                            if (multisampled) {
+                                // only pixels within half a pixel of an edge need their samples tested one by one
+                                int coverage;
+                                if (inside || edge21 >= margin21 && edge02 >= margin02 && edge10 >= margin10) {
+                                    coverage = sampleMask;
+                                } else if (edge21 < -margin21 || edge02 < -margin02 || edge10 < -margin10) {
+                                    coverage = 0;
+                                } else {
+                                    coverage = sampleCoverage(edge21, edge02, edge10, sampleX21, sampleY21, sampleX02, sampleY02, sampleX10, sampleY10);
+                                }
+                                if (coverage != 0) {
+                                    tested++;
+                                    int passed;
+                                    if (coverage == sampleMask && sampleSlots[pixelIndex] < 0) {
+                                        // the common case of a covered compact pixel mostly passes or fails as a whole
+                                        int stored = depthBuffer[pixelIndex];
+                                        float farthest = interpolatedZ + zSampleMin, nearest = interpolatedZ + zSampleMax;
+                                        if ((integerDepth ? depthBase + Math.min(depthMax, (int) farthest) : Float.floatToRawIntBits(farthest)) > stored) {
+                                            passed = sampleMask;
+                                        } else if ((integerDepth ? depthBase + Math.min(depthMax, (int) nearest) : Float.floatToRawIntBits(nearest)) <= stored) {
+                                            passed = 0;
+                                        } else {
+                                            passed = testSamples(pixelIndex, coverage, interpolatedZ, zSampleDx, zSampleDy);
+                                        }
+                                    } else {
+                                        passed = testSamples(pixelIndex, coverage, interpolatedZ, zSampleDx, zSampleDy);
+                                    }
+                                    if (passed == sampleMask && sampleSlots[pixelIndex] < 0) {
+                                        int pixel = texture.sample(textureU, textureV, lod);
+                                        if (pixel >> 24 != 0) {
+                                            shaded++;
+                                            depthBuffer[pixelIndex] = integerDepth ? depthBase + Math.min(depthMax, (int) interpolatedZ) : Float.floatToRawIntBits(interpolatedZ);
+                                            pixelData[pixelIndex] = tinted ? tint(pixel, tint) : pixel;
+                                            if (lit) {
+                                                storeSurface(triangle, offset, pixelIndex, edge02 * inverseArea, edge10 * inverseArea);
+                                            } else if (shadePending != null) {
+                                                shadePending[pixelIndex] = false;
+                                            }
+                                        }
+                                    } else if (passed != 0) {
+                                        // shaded once at the pixel center for all of its samples
+                                        int pixel = texture.sample(textureU, textureV, lod);
+                                        if (pixel >> 24 != 0) {
+                                            shaded++;
+                                            writeSamples(pixelIndex, passed, tinted ? tint(pixel, tint) : pixel, interpolatedZ, zSampleDx, zSampleDy);
+                                            if (lit) {
+                                                storeSurface(triangle, offset, pixelIndex, edge02 * inverseArea, edge10 * inverseArea);
+                                            } else if (shadePending != null) {
+                                                shadePending[pixelIndex] = false;
+                                            }
+                                        }
+                                    }
+                                }
+                            } else if (inside || (edge21 | edge02 | edge10) >= 0) {
+                                int depth = integerDepth ? depthBase + Math.min(depthMax, (int) interpolatedZ) : Float.floatToRawIntBits(interpolatedZ);
+                                tested++;
+                                if (depth > depthBuffer[pixelIndex]) {
+                                    int pixel = texture.sample(textureU, textureV, lod);
+                                    if (pixel >> 24 != 0) {
+                                        shaded++;
+                                        depthBuffer[pixelIndex] = depth;
+                                        pixelData[pixelIndex] = tinted ? tint(pixel, tint) : pixel;
+                                        if (lit) {
+                                            storeSurface(triangle, offset, pixelIndex, edge02 * inverseArea, edge10 * inverseArea);
+                                        } else if (shadePending != null) {
+                                            // may hide a lit surface, which shade must not light this color with
+                                            shadePending[pixelIndex] = false;
+                                        }
+                                    }
                                 }
                             }
+                            edge21 += stepX21;
+                            edge02 += stepX02;
+                            edge10 += stepX10;
+                            interpolatedZ += zDx;
+                            textureU += uDx;
+                            textureV += vDx;
                         }
+                        textureU = s * w;
+                        textureV = t * w;
+                    }
+                    edgeRow21 += stepY21;
+                    edgeRow02 += stepY02;
+                    edgeRow10 += stepY10;
+                    zRow += zDy;
+                    qRow += qDy;
+                    sRow += sDy;
+                    tRow += tDy;
+                }
+
+                if (hierarchical) {
+                    boolean wholeBlock = fromX == blockX && fromY == blockY
+                            && (toX == blockX + BLOCK_SIZE - 1 || toX == width - 1) && (toY == blockY + BLOCK_SIZE - 1 || toY == height - 1);
+                    if (inside && solid && wholeBlock) {
+                        // every pixel now holds at least the farthest depth of this triangle over the block
+                        hiZ[block] = Math.max(hiZ[block], Math.max(farthestZ, cornerZ + blockMinZ));
+                    } else {
+                        hiZStale[block] = true;
                     }
                 }
             }
         }
+
+        if (!hierarchical) {
+            markHiZStale(minX, minY, maxX, maxY);
+        } else if (!drawn && hiZRejected) {
+            culledTriangles.increment();
+        }
+        FrameProfiler.count(FrameProfiler.Counter.PIXELS_TESTED, tested);
+        FrameProfiler.count(FrameProfiler.Counter.PIXELS_SHADED, shaded);
+    }
+
+    /**
+     * Interpolates the surface of a triangle perspective correctly at a pixel given by the screen space weights of
+     * vertex 1 and 2, and flags the pixel for {@link #shade}.
+     */
+    private void storeSurface(float[] triangle, int offset, int pixelIndex, float weight1, float weight2) {
+        int offset1 = offset + TRIANGLE_VERTEX, offset2 = offset1 + TRIANGLE_VERTEX;
+        float w0 = (1 - weight1 - weight2) * triangle[offset + 3];
+        float w1 = weight1 * triangle[offset1 + 3];
+        float w2 = weight2 * triangle[offset2 + 3];
+        float normalize = 1 / (w0 + w1 + w2);
+        w0 *= normalize;
+        w1 *= normalize;
+        w2 *= normalize;
+        int out = pixelIndex * Lighting.SURFACE_STRIDE;
+        for (int k = TRIANGLE_SURFACE; k < TRIANGLE_VERTEX; k++) {
+            gBuffer[out++] = w0 * triangle[offset + k] + w1 * triangle[offset1 + k] + w2 * triangle[offset2 + k];
+        }
+        shadePending[pixelIndex] = true;
+    }
+
+    /**
+     * Same as {@link #isOccluded(int, int, int, int, float)} but without tightening stale blocks, cheap enough
+     * to run for every small triangle.
+     */
+    private boolean isHiZOccluded(int minX, int minY, int maxX, int maxY, float nearestZ) {
+        for (int blockY = minY / BLOCK_SIZE; blockY <= maxY / BLOCK_SIZE; blockY++) {
+            for (int blockX = minX / BLOCK_SIZE; blockX <= maxX / BLOCK_SIZE; blockX++) {
+                if (hiZ[blockX + blockY * hiZWidth] < nearestZ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void markHiZStale(int minX, int minY, int maxX, int maxY) {
+        for (int blockY = minY / BLOCK_SIZE; blockY <= maxY / BLOCK_SIZE; blockY++) {
+            for (int blockX = minX / BLOCK_SIZE; blockX <= maxX / BLOCK_SIZE; blockX++) {
+                hiZStale[blockX + blockY * hiZWidth] = true;
+            }
+        }
+    }
+
+    /**
+     * Top-left fill rule: pixel centers exactly on an edge belong to the triangle only if that edge is a top
+     * or left edge. Other edges are biased by one fixed point unit so {@code >= 0} excludes them.
+     */
+    private static long fillBias(long fromX, long fromY, long toX, long toY) {
+        long dx = toX - fromX;
+        long dy = toY - fromY;
+        return dy < 0 || (dy == 0 && dx > 0) ? 0 : -1;
     }
 }
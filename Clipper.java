@@ -0,0 +1,119 @@
+/**
+ * File: Clipper.java
+ * Created on 18.10.2026, 11:03:17
+ *
+ * Homogeneous triangle clipper, run before the perspective divide. Planes are expressed in w so
+ * they do not depend on the depth range produced by MathUtil.createProjectionMatrix:
+ * near (w >= near), far (w <= far) and a guard band of {@link #GUARD_BAND} viewports in x and y.
+ * The guard band keeps screen coordinates bounded without clipping against the viewport itself,
+ * the rasterizer scissors the rest.
+ *
+ * Not thread-safe, every worker owns its own instance.
+ *
+ * @author LWJGL2
+ */
+public class Clipper {
+
+    /**
+     * Clip-space vertex: x, y, z, w, texture u, texture v and the {@link Lighting#SURFACE_STRIDE} floats of its surface.
+     */
+    public static final int VERTEX_STRIDE = 6 + Lighting.SURFACE_STRIDE;
+    public static final float GUARD_BAND = 8.0f;
+
+    private static final int PLANES = 6;
+    // every plane can add at most one vertex to a convex polygon
+    public static final int MAX_VERTICES = 3 + PLANES;
+    public static final int MAX_TRIANGLES = MAX_VERTICES - 2;
+
+    public final float[] vertices = new float[MAX_VERTICES * VERTEX_STRIDE];
+    private final float[] scratch = new float[MAX_VERTICES * VERTEX_STRIDE];
+
+    /**
+     * @return bit mask of the planes a clip-space position lies outside of, in the order {@link #clip} uses
+     */
+    public static int outcode(float x, float y, float w, float near, float far) {
+        float guardBand = GUARD_BAND * w;
+        int code = 0;
+        if (w < near) {
+            code |= 1;
+        }
+        if (w > far) {
+            code |= 1 << 1;
+        }
+        if (x > guardBand) {
+            code |= 1 << 2;
+        }
+        if (x < -guardBand) {
+            code |= 1 << 3;
+        }
+        if (y > guardBand) {
+            code |= 1 << 4;
+        }
+        if (y < -guardBand) {
+            code |= 1 << 5;
+        }
+        return code;
+    }
+
+    /**
+     * Clips the polygon held in {@link #vertices} against the planes in {@code planeMask}.
+     *
+     * @return vertex count of the clipped polygon, less than 3 if nothing is left
+     */
+    public int clip(int count, int planeMask, float near, float far) {
+        float[] in = vertices;
+        float[] out = scratch;
+        for (int plane = 0; plane < PLANES && count >= 3; plane++) {
+            if ((planeMask & (1 << plane)) == 0) {
+                continue;
+            }
+            int written = 0;
+            for (int i = 0; i < count; i++) {
+                int a = i * VERTEX_STRIDE;
+                int b = ((i + 1) % count) * VERTEX_STRIDE;
+                float distanceA = distance(plane, in, a, near, far);
+                float distanceB = distance(plane, in, b, near, far);
+                if (distanceA >= 0) {
+                    System.arraycopy(in, a, out, written * VERTEX_STRIDE, VERTEX_STRIDE);
+                    written++;
+                }
+                if ((distanceA >= 0) != (distanceB >= 0)) {
+                    float t = distanceA / (distanceA - distanceB);
+                    int o = written * VERTEX_STRIDE;
+                    for (int k = 0; k < VERTEX_STRIDE; k++) {
+                        out[o + k] = in[a + k] + (in[b + k] - in[a + k]) * t;
+                    }
+                    written++;
+                }
+            }
+            float[] swap = in;
+            in = out;
+            out = swap;
+            count = written;
+        }
+        if (in != vertices) {
+            System.arraycopy(in, 0, vertices, 0, Math.max(count, 0) * VERTEX_STRIDE);
+        }
+        return count;
+    }
+
+    private static float distance(int plane, float[] vertex, int offset, float near, float far) {
+        float x = vertex[offset];
+        float y = vertex[offset + 1];
+        float w = vertex[offset + 3];
+        switch (plane) {
+            case 0:
+                return w - near;
+            case 1:
+                return far - w;
+            case 2:
+                return GUARD_BAND * w - x;
+            case 3:
+                return GUARD_BAND * w + x;
+            case 4:
+                return GUARD_BAND * w - y;
+            default:
+                return GUARD_BAND * w + y;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.awt.Color;
+import java.util.Arrays;
+import org.joml.Matrix4f;
+
+/**
+ * File: CommandList.java
+ * Created on 19.10.2026, 18:02:44
+ *
+ * Recorded clears and draws, executed later by a {@link RenderQueue}. Every command captures the state
+ * it needs when it is recorded, so several threads can each record their own list at the same time and the queue may
+ * reorder the commands. A single list must only be recorded by one thread at a time.
+ * <p>
+ * Commands are ordered by a sort key: the clear they follow, then camera, texture and front to back depth. Every clear
+ * starts a new segment that only draws recorded after it belong to. Lists are pooled, {@link #reset()} keeps the
+ * arrays for the next frame.
+ *
+ * @author LWJGL2
+ */
+public class CommandList {
+
+    public static final int CLEAR = 0, DRAW = 1, DRAW_INSTANCED = 2;
+
+    /**
+     * Sort key layout from the top, below an unused sign bit: segment, draw flag, camera, texture, depth and
+     * a free field the queue fills with the command's position in the frame.
+     */
+    public static final int SEGMENT_BITS = 5, CAMERA_BITS = 5, TEXTURE_BITS = 12, DEPTH_BITS = 20, INDEX_BITS = 20;
+    private static final int DEPTH_SHIFT = INDEX_BITS;
+    private static final int TEXTURE_SHIFT = DEPTH_SHIFT + DEPTH_BITS;
+    private static final int CAMERA_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+    private static final int DRAW_SHIFT = CAMERA_SHIFT + CAMERA_BITS;
+    private static final int SEGMENT_SHIFT = DRAW_SHIFT + 1;
+
+    protected int count;
+    protected int[] types = new int[64];
+    protected long[] keys = new long[64];
+    // offset into matrices of the model matrix of a draw
+    protected int[] matrixOffsets = new int[64];
+    // offset into matrices of the view and projection matrix a command was recorded with, -1 before the first camera
+    protected int[] cameraOffsets = new int[64];
+    protected Texture[] textures = new Texture[64];
+    protected StaticMeshLoader.Mesh[] meshes = new StaticMeshLoader.Mesh[64];
+    protected Matrix4f[][] instances = new Matrix4f[64][];
+    protected int[][] tints = new int[64][];
+    protected int[] instanceCounts = new int[64];
+    protected Color[] colors = new Color[64];
+
+    protected float[] matrices = new float[16 * 64];
+    protected int matrixCount;
+
+    // recording state
+    private int segment, camera = -1, cameraOffset = -1;
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f scratch = new Matrix4f();
+
+    /**
+     * Drops all commands, keeping the arrays and releasing the references to textures and meshes.
+     */
+    public void reset() {
+        Arrays.fill(textures, 0, count, null);
+        Arrays.fill(meshes, 0, count, null);
+        Arrays.fill(instances, 0, count, null);
+        Arrays.fill(tints, 0, count, null);
+        Arrays.fill(colors, 0, count, null);
+        count = 0;
+        matrixCount = 0;
+        segment = 0;
+        camera = -1;
+        cameraOffset = -1;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Clears color, depth and Hi-Z of the target before any draw recorded after this call.
+     * Only the first 32 clears of a list keep their place, later ones share the last segment.
+     */
+    public void clear(Color color) {
+        if (count > 0 || segment > 0) {
+            segment++;
+        }
+        int command = add(CLEAR, key(0, 0, 0, 0));
+        colors[command] = color;
+    }
+
+    /**
+     * Sets the view and projection matrices of all following draws. The matrices are copied.
+     */
+    public void setCamera(Matrix4f viewMatrix, Matrix4f projectionMatrix) {
+        camera++;
+        cameraOffset = addMatrix(viewMatrix);
+        addMatrix(projectionMatrix);
+        viewProjection.set(projectionMatrix).mul(viewMatrix);
+    }
+
+    /**
+     * Draws a mesh like {@link TileRenderer#draw(Texture, StaticMeshLoader.Mesh)}. The model matrix is copied.
+     */
+    public void draw(Texture texture, StaticMeshLoader.Mesh mesh, Matrix4f modelMatrix) {
+        checkCamera();
+        int offset = addMatrix(modelMatrix);
+        scratch.set(viewProjection).mul(modelMatrix);
+        int command = add(DRAW, key(1, textureId(texture), depth(scratch, mesh.bounds), 0));
+        matrixOffsets[command] = offset;
+        textures[command] = texture;
+        meshes[command] = mesh;
+    }
+
+    /**
+     * Draws instances like {@link TileRenderer#drawInstanced}. The arrays are not copied and must stay unchanged until
+     * the frame has been executed; the command sorts by its nearest instance.
+     */
+    public void drawInstanced(Texture texture, StaticMeshLoader.Mesh mesh, Matrix4f[] instanceMatrices, int[] instanceTints, int instanceCount) {
+        checkCamera();
+        float nearest = Float.MAX_VALUE;
+        for (int i = 0; i < instanceCount; i++) {
+            scratch.set(viewProjection).mul(instanceMatrices[i]);
+            nearest = Math.min(nearest, centerW(scratch, mesh.bounds));
+        }
+        int command = add(DRAW_INSTANCED, key(1, textureId(texture), depthKey(nearest), 0));
+        textures[command] = texture;
+        meshes[command] = mesh;
+        instances[command] = instanceMatrices;
+        tints[command] = instanceTints;
+        instanceCounts[command] = instanceCount;
+    }
+
+    private void checkCamera() {
+        if (cameraOffset < 0) {
+            throw new IllegalStateException("setCamera must be recorded before the first draw");
+        }
+    }
+
+    private int add(int type, long key) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            matrixOffsets = Arrays.copyOf(matrixOffsets, capacity);
+            cameraOffsets = Arrays.copyOf(cameraOffsets, capacity);
+            textures = Arrays.copyOf(textures, capacity);
+            meshes = Arrays.copyOf(meshes, capacity);
+            instances = Arrays.copyOf(instances, capacity);
+            tints = Arrays.copyOf(tints, capacity);
+            instanceCounts = Arrays.copyOf(instanceCounts, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+        types[count] = type;
+        keys[count] = key;
+        cameraOffsets[count] = cameraOffset;
+        return count++;
+    }
+
+    private int addMatrix(Matrix4f matrix) {
+        if (matrices.length < (matrixCount + 1) * 16) {
+            matrices = Arrays.copyOf(matrices, matrices.length * 2);
+        }
+        matrix.get(matrices, matrixCount * 16);
+        return matrixCount++ * 16;
+    }
+
+    private long key(int draw, int texture, int depth, int index) {
+        return (long) Math.min(segment, (1 << SEGMENT_BITS) - 1) << SEGMENT_SHIFT
+                | (long) draw << DRAW_SHIFT
+                | (long) (Math.max(camera, 0) & ((1 << CAMERA_BITS) - 1)) << CAMERA_SHIFT
+                | (long) texture << TEXTURE_SHIFT
+                | (long) depth << DEPTH_SHIFT
+                | index;
+    }
+
+    private static int textureId(Texture texture) {
+        return System.identityHashCode(texture) & ((1 << TEXTURE_BITS) - 1);
+    }
+
+    private static int depth(Matrix4f mvp, float[] bounds) {
+        return depthKey(centerW(mvp, bounds));
+    }
+
+    /**
+     * @return clip w of the center of the box {@code bounds}, the view distance along the camera axis
+     */
+    private static float centerW(Matrix4f mvp, float[] bounds) {
+        float x = (bounds[0] + bounds[3]) / 2, y = (bounds[1] + bounds[4]) / 2, z = (bounds[2] + bounds[5]) / 2;
+        return mvp.m03() * x + mvp.m13() * y + mvp.m23() * z + mvp.m33();
+    }
+
+    /**
+     * The top bits of a positive float sort like the float, anything behind the camera sorts first.
+     */
+    private static int depthKey(float w) {
+        return w > 0 ? Float.floatToIntBits(w) >>> (31 - DEPTH_BITS) : 0;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * File: DynamicResolution.java
+ * Created on 21.10.2026, 15:12:09
+ *
+ * Picks the resolution to render at from recent frame times, to hold a frame rate on hosts or in scenes that cannot
+ * afford the full one. The frame is rendered at {@link #getScale} of the window in both directions with
+ * {@link Buffer#resize}, which reuses the buffer's memory, and {@link Buffer#draw} upscales it to the window.
+ * <p>
+ * Render time grows about linearly with the pixel count, so the scale that hits a frame time is the current one times
+ * the square root of the target over the measured time. The scale only changes by whole {@link #step}s, and only once
+ * the {@link #HISTORY} frames since the last change agree: down when they average over the budget, up when even the
+ * next step up is expected to stay below {@link #headroom} of it. Between the two it holds, so it does not oscillate.
+ *
+ * <pre>
+ * Buffer buffer = pipeline.acquire(resolution.width(windowWidth), resolution.height(windowHeight));
+ * long start = System.nanoTime(); render(buffer); resolution.update(System.nanoTime() - start);
+ * </pre>
+ *
+ * @author LWJGL2
+ */
+public class DynamicResolution {
+
+    /**
+     * Frames averaged before every decision.
+     */
+    public static final int HISTORY = 8;
+
+    /**
+     * Frame time to stay under in nanoseconds.
+     */
+    public long budget;
+    public float minScale = 0.5f, maxScale = 1;
+    public float step = 0.05f;
+    /**
+     * Part of the budget a larger scale has to be expected to fit into before it is taken.
+     */
+    public float headroom = 0.8f;
+
+    private float scale = 1;
+    private final long[] frameTimes = new long[HISTORY];
+    private int frames;
+
+    public DynamicResolution(double targetFps) {
+        this.budget = (long) (1e9 / targetFps);
+    }
+
+    /**
+     * Reports how long the last frame took to render, without presentation or waiting for a buffer.
+     */
+    public void update(long frameNanos) {
+        frameTimes[frames++ % HISTORY] = frameNanos;
+        if (frames < HISTORY) {
+            return;
+        }
+        long total = 0;
+        for (long frameTime : frameTimes) {
+            total += frameTime;
+        }
+        double average = (double) total / HISTORY;
+        double ideal = scale * Math.sqrt(budget * headroom / average);
+        float next = Math.max(minScale, Math.min(maxScale, (float) Math.floor(ideal / step + 1e-3) * step));
+        if (next < scale && average > budget || next > scale) {
+            scale = next;
+            // frames measured at the old scale say nothing about the new one
+            frames = 0;
+        }
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public void setScale(float scale) {
+        this.scale = Math.max(minScale, Math.min(maxScale, scale));
+        frames = 0;
+    }
+
+    /**
+     * @return the width to render a window of {@code fullWidth} at, a multiple of {@link Buffer#BLOCK_SIZE} so vector
+     * rows and Hi-Z blocks stay whole
+     */
+    public int width(int fullWidth) {
+        return Math.max(Buffer.BLOCK_SIZE, Math.round(fullWidth * scale) & -Buffer.BLOCK_SIZE);
+    }
+
+    public int height(int fullHeight) {
+        return Math.max(1, Math.round(fullHeight * scale));
+    }
+}
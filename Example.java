@@ -16,13 +16,17 @@ import org.joml.Matrix4f;
  */
 public class Example {
 
-    protected static int threadCount = 12;
-    protected static ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threadCount);
+    protected static int threadCount = Runtime.getRuntime().availableProcessors();
+    protected static TileRenderer renderer = new TileRenderer(threadCount);
+    // -Dexample.incremental=true holds the camera still and only redraws and presents what changed
+    protected static boolean incremental = Boolean.getBoolean("example.incremental");
+    // -Dexample.stats=true prints the frame pacing of the pipeline to stderr once a second
+    protected static boolean stats = Boolean.getBoolean("example.stats");
 
     /**
      * @param args the command line arguments
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
 
         JFrame frame = new JFrame();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -31,37 +35,55 @@ public class Example {
         frame.setVisible(true);
         frame.createBufferStrategy(1);
 
-        final Buffer buffer = new Buffer(frame.getWidth(), frame.getHeight());
         final BufferStrategy bufferStrategy = frame.getBufferStrategy();
         final Graphics g = bufferStrategy.getDrawGraphics();
+        // the blit runs on the presenter thread while the workers already rasterize the next frame, scaled to the
+        // window when dynamic resolution rendered it smaller
+        final FramePipeline pipeline = new FramePipeline(3, frame.getWidth(), frame.getHeight(), buffer -> buffer.draw(g, frame.getWidth(), frame.getHeight()));
+        // -Dexample.fps=60 lowers the resolution whenever rendering cannot keep up with that frame rate
+        String targetFps = System.getProperty("example.fps");
+        DynamicResolution resolution = targetFps == null ? null : new DynamicResolution(Double.parseDouble(targetFps));
 
         long time = System.nanoTime();
         long secondInNanos = TimeUnit.SECONDS.toNanos(1);
-        int frames = 0;
         init();
+        renderer.incremental = incremental;
 
         while (frame.isVisible()) {
-            if (buffer.width != frame.getWidth() || buffer.height != frame.getHeight()) {
-                buffer.create(frame.getWidth(), frame.getHeight());
-            }
-            buffer.clear(Color.black);
+            Buffer buffer = resolution == null ? pipeline.acquire(frame.getWidth(), frame.getHeight())
+                    : pipeline.acquire(resolution.width(frame.getWidth()), resolution.height(frame.getHeight()));
+            long renderStart = System.nanoTime();
+            boolean changed;
             {
-                render(buffer);
+                changed = render(buffer);
+            }
+            if (!changed) {
+                // the window already shows this frame, wait for the next one instead of spinning
+                pipeline.discard(buffer);
+                Thread.sleep(16);
+                continue;
+            }
+            if (resolution != null) {
+                resolution.update(System.nanoTime() - renderStart);
             }
+            pipeline.present(buffer);
 
-            buffer.draw(g, frame.getWidth(), frame.getHeight());
-            frames++;
             if (System.nanoTime() - time > secondInNanos) {
                 time = System.nanoTime();
-                buffer.fps = frames;
-                frame.setTitle("FPS: " + buffer.fps);
-                frames = 0;
+                buffer.fps = (int) pipeline.getFps();
+                frame.setTitle("FPS: " + buffer.fps + (resolution == null ? "" : " at " + buffer.width + "x" + buffer.height));
+                if (stats) {
+                    System.err.println(pipeline.stats());
+                }
             }
         }
+        pipeline.shutdown();
     }
 
     protected static List<StaticMeshLoader.Mesh> model;
     protected static Texture texture;
+    // -Dexample.lighting=GOURAUD or PER_PIXEL lights the model, unlit by default
+    protected static Lighting lighting;
 
     protected static void init() {
         try {
@@ -70,36 +92,39 @@ public class Example {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        String mode = System.getProperty("example.lighting");
+        if (mode != null) {
+            lighting = new Lighting();
+            lighting.mode = Lighting.Mode.valueOf(mode);
+            lighting.addDirectional(-1, -1, -1, Color.white, 0.8f);
+            lighting.addPoint(1, 1, 1, 4, Color.orange, 1);
+        }
     }
 
-    protected static void render(Buffer buffer) {
-        buffer.viewMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createViewMatrix(0, 0, 0, 25, System.nanoTime() / 10000000 % 360, 0, 2));
+    /**
+     * @return false if the frame is the same as the one before
+     */
+    protected static boolean render(Buffer buffer) {
+        buffer.viewMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createViewMatrix(0, 0, 0, 25, incremental ? 0 : System.nanoTime() / 10000000 % 360, 0, 2));
         buffer.projectionMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createProjectionMatrix(1000, -100, 70, buffer.width, buffer.height));
 // buffer.normalMatrix = new Matrix4f(buffer.modelMatrix).invert().transpose();
 
         buffer.modelMatrix = new Matrix4f().translate(0, -0.5f, 0);//.rotateX(MathHelper.toRadians(-90));
+        buffer.lighting = lighting;
 
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        renderer.begin(buffer);
+        renderer.clear(Color.black);
         for (StaticMeshLoader.Mesh mesh : model) {
-            final int count = mesh.indices.length / threadCount;
-
-            for (int i = 0; i < mesh.indices.length; i += count) {
-                final int start = i;
-
-                CompletableFuture<Void> runAsync = CompletableFuture.runAsync(() -> {
-                    buffer.drawFilledTriangleInline(texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords, start, start + count);
-                }, executor);
-
-                futures.add(runAsync);
-            }
+            renderer.draw(texture, mesh);
         }
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        
+        boolean changed = renderer.end();
+
         /* single thread
         for (StaticMeshLoader.Mesh mesh : model) {
             System.out.println( mesh.vertices.length);
-            buffer.drawFilledTriangleInline(texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords);
+            buffer.drawFilledTriangleInline(texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords, 0, mesh.indices.length);
         }*/
+        return changed;
     }
 
 
@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * File: FramePipeline.java
+ * Created on 19.10.2026, 21:26:05
+ *
+ * Rotates two or three {@link Buffer}s between the render loop and a presenter thread, so one frame is blitted while the
+ * next is rasterized. A buffer is only handed to the presenter once it is completely drawn, and only handed back to the
+ * render loop once the presenter is done with it, so neither side ever sees a half-drawn frame.
+ * <p>
+ * A finished frame that is still waiting when the next one is finished is replaced by it, which keeps latency at most
+ * one frame; the replaced frame counts as dropped. With three buffers rendering never waits for the presenter, with two
+ * it waits whenever the presenter is still busy with the frame before.
+ *
+ * <pre>
+ * Buffer buffer = pipeline.acquire(width, height);
+ * renderer.begin(buffer); renderer.clear(Color.black); ... renderer.end();
+ * pipeline.present(buffer);
+ * </pre>
+ *
+ * @author LWJGL2
+ */
+public class FramePipeline {
+
+    /**
+     * Frames the pacing statistics are taken over.
+     */
+    public static final int HISTORY = 120;
+
+    private final Consumer<Buffer> presenter;
+    private final Thread thread;
+
+    // buffers free for rendering, at most one finished frame waiting for the presenter
+    private final Buffer[] free;
+    private int freeCount;
+    private Buffer ready;
+    private long readyAcquired;
+    private boolean running = true;
+    private RuntimeException failure;
+    private final Buffer[] all;
+
+    // acquire time of every buffer handed out, indexed like all
+    private final long[] acquired;
+
+    private long frames, presented, dropped;
+    private long lastPresent;
+    // ring buffers of the last HISTORY presented frames, in nanoseconds
+    private final long[] intervals = new long[HISTORY], latencies = new long[HISTORY];
+    private final long[] sorted = new long[HISTORY];
+
+    /**
+     * @param presenter called on the presenter thread with every frame to show, e.g. a blit to the window
+     */
+    public FramePipeline(int bufferCount, int width, int height, Consumer<Buffer> presenter) {
+        if (bufferCount < 2 || bufferCount > 3) {
+            throw new IllegalArgumentException("Expected 2 or 3 buffers, got " + bufferCount);
+        }
+        this.presenter = presenter;
+        this.all = new Buffer[bufferCount];
+        this.free = new Buffer[bufferCount];
+        this.acquired = new long[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            all[i] = new Buffer(width, height);
+            free[freeCount++] = all[i];
+        }
+        thread = new Thread(this::run, "Frame presenter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for a buffer that is neither presented nor waiting to be, resized to the given size if it changed, which
+     * reuses its memory when shrinking or going back to a size it had before, see {@link Buffer#resize}.
+     *
+     * @throws RuntimeException what the presenter threw while showing an earlier frame
+     */
+    public synchronized Buffer acquire(int width, int height) throws InterruptedException {
+        while (freeCount == 0 && failure == null) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        Buffer buffer = free[--freeCount];
+        free[freeCount] = null;
+        if (buffer.width != width || buffer.height != height) {
+            buffer.resize(width, height);
+        }
+        acquired[indexOf(buffer)] = System.nanoTime();
+        return buffer;
+    }
+
+    /**
+     * Queues a completely drawn buffer for presentation. A frame still waiting from before is dropped and its buffer
+     * becomes free again.
+     */
+    public synchronized void present(Buffer buffer) {
+        FrameProfiler.frame(buffer);
+        frames++;
+        if (ready != null) {
+            dropped++;
+            // the window still shows the frame before the dropped one, so this frame has to cover its changes too
+            buffer.addDirty(ready);
+            free[freeCount++] = ready;
+        }
+        ready = buffer;
+        readyAcquired = acquired[indexOf(buffer)];
+        notifyAll();
+    }
+
+    /**
+     * Hands an acquired buffer back without presenting it, for a frame that shows nothing new, see
+     * {@link TileRenderer#end}.
+     */
+    public synchronized void discard(Buffer buffer) {
+        indexOf(buffer);
+        free[freeCount++] = buffer;
+        notifyAll();
+    }
+
+    /**
+     * Presents what is still waiting and stops the presenter thread.
+     */
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        thread.join();
+    }
+
+    private void run() {
+        while (true) {
+            Buffer buffer;
+            long frameAcquired;
+            synchronized (this) {
+                while (ready == null && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (ready == null) {
+                    return;
+                }
+                buffer = ready;
+                frameAcquired = readyAcquired;
+                ready = null;
+            }
+            try {
+                presenter.accept(buffer);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            long now = System.nanoTime();
+            synchronized (this) {
+                int slot = (int) (presented % HISTORY);
+                intervals[slot] = lastPresent == 0 ? 0 : now - lastPresent;
+                latencies[slot] = now - frameAcquired;
+                lastPresent = now;
+                presented++;
+                free[freeCount++] = buffer;
+                notifyAll();
+            }
+        }
+    }
+
+    private int indexOf(Buffer buffer) {
+        for (int i = 0; i < all.length; i++) {
+            if (all[i] == buffer) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Buffer does not belong to this pipeline");
+    }
+
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    public synchronized long getPresented() {
+        return presented;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return presented frames per second over the last {@link #HISTORY} frames
+     */
+    public synchronized double getFps() {
+        int count = 0;
+        long total = 0;
+        for (int i = 0; i < Math.min(presented, HISTORY); i++) {
+            // the very first frame has no interval
+            if (intervals[i] > 0) {
+                total += intervals[i];
+                count++;
+            }
+        }
+        return count == 0 ? 0 : count * 1e9 / total;
+    }
+
+    /**
+     * @return one line with frame rate, frame interval and latency percentiles in milliseconds and the dropped frames
+     */
+    public synchronized String stats() {
+        int count = (int) Math.min(presented, HISTORY);
+        return String.format("%.1f fps, interval %s, latency %s, presented %d, dropped %d",
+                getFps(), percentiles(intervals, count), percentiles(latencies, count), presented, dropped);
+    }
+
+    private String percentiles(long[] samples, int count) {
+        if (count == 0) {
+            return "-";
+        }
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        return String.format("p50 %.2f p95 %.2f max %.2f ms", sorted[count / 2] / 1e6, sorted[(int) (count * 0.95)] / 1e6, sorted[count - 1] / 1e6);
+    }
+}
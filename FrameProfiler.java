@@ -0,0 +1,330 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * File: FrameProfiler.java
+ * Created on 21.10.2026, 11:32:40
+ *
+ * Process wide instrumentation of the renderer: nanoseconds per {@link Stage}, frame time percentiles, triangle and
+ * pixel {@link Counter}s and the utilization of every TileRenderer worker, over the last {@link #HISTORY} frames.
+ * <p>
+ * Only active with {@code -Dprofiler.enabled=true}. Every recording method starts by testing the static final
+ * {@link #ENABLED}, so when it is off the JIT folds the calls and the timestamps taken for them away. Recording
+ * allocates nothing: times go to atomic arrays, counters to {@link LongAdder}s, and the renderer adds its pixel counts
+ * once per triangle or row instead of once per pixel. Stage times are summed over every thread that worked on the
+ * stage, so with n workers a stage can take up to n times the wall time of its phase.
+ * <p>
+ * The statistics are registered as the MXBean {@code renderer:type=FrameProfiler} for JConsole or any other JMX client,
+ * and {@code -Dprofiler.dump=seconds} prints them to stderr that often, as text or with {@code -Dprofiler.format=json}
+ * as one JSON object per line. Frames end in {@link #frame}, which FramePipeline and Headless call for every frame.
+ *
+ * @author LWJGL2
+ */
+public class FrameProfiler implements FrameProfilerMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("profiler.enabled");
+
+    /**
+     * Frames the statistics are taken over.
+     */
+    public static final int HISTORY = 120;
+
+    /**
+     * Threads told apart by the worker utilization: slot 0 for every thread outside a ForkJoinPool, then one per
+     * pool index.
+     */
+    public static final int WORKER_SLOTS = 65;
+
+    public enum Stage {
+        CLEAR, VERTEX, SETUP, RASTER, RESOLVE, SHADE, PRESENT
+    }
+
+    public enum Counter {
+        TRIANGLES_SUBMITTED, TRIANGLES_CULLED, TRIANGLES_RASTERIZED, PIXELS_TESTED, PIXELS_SHADED, PIXELS_LIT
+    }
+
+    private static final long DUMP_INTERVAL = (long) (Double.parseDouble(System.getProperty("profiler.dump", "0")) * 1e9);
+    private static final boolean DUMP_JSON = "json".equalsIgnoreCase(System.getProperty("profiler.format"));
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    // recorded by the render threads since the last frame
+    private static final AtomicLongArray stageNanos = new AtomicLongArray(STAGES.length);
+    private static final LongAdder[] counters = new LongAdder[COUNTERS.length];
+    private static final AtomicLongArray busyNanos = new AtomicLongArray(WORKER_SLOTS);
+
+    public static final FrameProfiler INSTANCE = new FrameProfiler();
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("renderer:type=FrameProfiler"));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // ring buffers of the last HISTORY frames, the per thread slots of a frame are contiguous
+    private long frames;
+    private long lastFrame, lastDump;
+    private final long[] frameTimes = new long[HISTORY], screenPixels = new long[HISTORY];
+    private final long[][] stageHistory = new long[STAGES.length][HISTORY];
+    private final long[][] counterHistory = new long[COUNTERS.length][HISTORY];
+    private final long[] busyHistory = new long[HISTORY * WORKER_SLOTS];
+    private final long[] sorted = new long[HISTORY];
+
+    private FrameProfiler() {
+    }
+
+    /**
+     * @return the start time for {@link #stage}, 0 while disabled
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since {@code start} to a stage.
+     *
+     * @return the current time, to start the next stage with
+     */
+    public static long stage(Stage stage, long start) {
+        if (!ENABLED) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        stageNanos.addAndGet(stage.ordinal(), now - start);
+        return now;
+    }
+
+    public static void count(Counter counter, long amount) {
+        if (ENABLED && amount != 0) {
+            counters[counter.ordinal()].add(amount);
+        }
+    }
+
+    /**
+     * Adds the time since {@code start} to the busy time of the calling thread.
+     */
+    public static void busy(long start) {
+        if (!ENABLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        Thread thread = Thread.currentThread();
+        int slot = thread instanceof ForkJoinWorkerThread ? 1 + ((ForkJoinWorkerThread) thread).getPoolIndex() % (WORKER_SLOTS - 1) : 0;
+        busyNanos.addAndGet(slot, elapsed);
+    }
+
+    /**
+     * Ends a frame drawn into {@code buffer}: moves everything recorded since the frame before into the history and
+     * prints the statistics once the dump interval has passed.
+     */
+    public static void frame(Buffer buffer) {
+        if (ENABLED) {
+            INSTANCE.endFrame(buffer.width * buffer.height);
+        }
+    }
+
+    private void endFrame(long pixels) {
+        String dump = null;
+        synchronized (this) {
+            long now = System.nanoTime();
+            int slot = (int) (frames % HISTORY);
+            if (lastFrame == 0) {
+                lastDump = now;
+            }
+            frameTimes[slot] = lastFrame == 0 ? 0 : now - lastFrame;
+            screenPixels[slot] = pixels;
+            for (int i = 0; i < STAGES.length; i++) {
+                stageHistory[i][slot] = stageNanos.getAndSet(i, 0);
+            }
+            for (int i = 0; i < COUNTERS.length; i++) {
+                counterHistory[i][slot] = counters[i].sumThenReset();
+            }
+            for (int i = 0; i < WORKER_SLOTS; i++) {
+                busyHistory[slot * WORKER_SLOTS + i] = busyNanos.getAndSet(i, 0);
+            }
+            lastFrame = now;
+            frames++;
+            if (DUMP_INTERVAL > 0 && now - lastDump >= DUMP_INTERVAL) {
+                lastDump = now;
+                dump = DUMP_JSON ? getJson() : getText();
+            }
+        }
+        if (dump != null) {
+            System.err.println(dump);
+        }
+    }
+
+    private int count() {
+        return (int) Math.min(frames, HISTORY);
+    }
+
+    @Override
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public synchronized double getFps() {
+        int count = 0;
+        long total = 0;
+        for (int i = 0; i < count(); i++) {
+            // the very first frame has no frame time
+            if (frameTimes[i] > 0) {
+                total += frameTimes[i];
+                count++;
+            }
+        }
+        return count == 0 ? 0 : count * 1e9 / total;
+    }
+
+    @Override
+    public synchronized double[] getFrameTimePercentiles() {
+        int count = 0;
+        for (int i = 0; i < count(); i++) {
+            if (frameTimes[i] > 0) {
+                sorted[count++] = frameTimes[i];
+            }
+        }
+        if (count == 0) {
+            return new double[4];
+        }
+        Arrays.sort(sorted, 0, count);
+        return new double[]{sorted[count / 2] / 1e6, sorted[(int) (count * 0.95)] / 1e6, sorted[(int) (count * 0.99)] / 1e6, sorted[count - 1] / 1e6};
+    }
+
+    @Override
+    public synchronized Map<String, Double> getStageMillis() {
+        Map<String, Double> stages = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            stages.put(stage.name(), average(stageHistory[stage.ordinal()]) / 1e6);
+        }
+        return stages;
+    }
+
+    @Override
+    public synchronized Map<String, Double> getCounters() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Counter counter : COUNTERS) {
+            values.put(counter.name(), average(counterHistory[counter.ordinal()]));
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized double getOverdraw() {
+        long shaded = 0, pixels = 0;
+        for (int i = 0; i < count(); i++) {
+            shaded += counterHistory[Counter.PIXELS_SHADED.ordinal()][i];
+            pixels += screenPixels[i];
+        }
+        return pixels == 0 ? 0 : (double) shaded / pixels;
+    }
+
+    @Override
+    public synchronized Map<String, Double> getWorkerUtilization() {
+        Map<String, Double> utilization = new LinkedHashMap<>();
+        long wall = 0;
+        for (int i = 0; i < count(); i++) {
+            wall += frameTimes[i];
+        }
+        for (int w = 0; w < WORKER_SLOTS; w++) {
+            long busy = 0;
+            for (int i = 0; i < count(); i++) {
+                // the first frame has no wall time to compare its busy time with
+                if (frameTimes[i] > 0) {
+                    busy += busyHistory[i * WORKER_SLOTS + w];
+                }
+            }
+            if (busy > 0) {
+                utilization.put(w == 0 ? "caller" : "worker-" + (w - 1), wall == 0 ? 0 : (double) busy / wall);
+            }
+        }
+        return utilization;
+    }
+
+    private double average(long[] history) {
+        long total = 0;
+        for (int i = 0; i < count(); i++) {
+            total += history[i];
+        }
+        return count() == 0 ? 0 : (double) total / count();
+    }
+
+    /**
+     * @return the statistics in a few lines: frame rate and times, stage milliseconds and counters per frame,
+     * overdraw and worker utilization
+     */
+    @Override
+    public synchronized String getText() {
+        double[] percentiles = getFrameTimePercentiles();
+        StringBuilder text = new StringBuilder(String.format("frames %d, %.1f fps, frame p50 %.2f p95 %.2f p99 %.2f max %.2f ms%nstages ms/frame:",
+                frames, getFps(), percentiles[0], percentiles[1], percentiles[2], percentiles[3]));
+        for (Map.Entry<String, Double> stage : getStageMillis().entrySet()) {
+            text.append(String.format(" %s %.2f", stage.getKey().toLowerCase(), stage.getValue()));
+        }
+        text.append(String.format("%ncounters/frame:"));
+        for (Map.Entry<String, Double> counter : getCounters().entrySet()) {
+            text.append(String.format(" %s %.0f", counter.getKey().toLowerCase(), counter.getValue()));
+        }
+        text.append(String.format(" overdraw %.2f%nutilization:", getOverdraw()));
+        for (Map.Entry<String, Double> worker : getWorkerUtilization().entrySet()) {
+            text.append(String.format(" %s %.0f%%", worker.getKey(), worker.getValue() * 100));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the statistics of {@link #getText} as one JSON object on one line
+     */
+    @Override
+    public synchronized String getJson() {
+        double[] percentiles = getFrameTimePercentiles();
+        StringBuilder json = new StringBuilder(String.format(Locale.ROOT, "{\"frames\":%d,\"fps\":%.2f,\"frameTimeMillis\":{\"p50\":%.3f,\"p95\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                frames, getFps(), percentiles[0], percentiles[1], percentiles[2], percentiles[3]));
+        appendJson(json, "stageMillis", getStageMillis());
+        appendJson(json, "counters", getCounters());
+        json.append(String.format(Locale.ROOT, ",\"overdraw\":%.3f", getOverdraw()));
+        appendJson(json, "utilization", getWorkerUtilization());
+        return json.append('}').toString();
+    }
+
+    private static void appendJson(StringBuilder json, String name, Map<String, Double> values) {
+        json.append(",\"").append(name).append("\":{");
+        boolean first = true;
+        for (Map.Entry<String, Double> value : values.entrySet()) {
+            json.append(first ? "" : ",").append('"').append(value.getKey().toLowerCase()).append("\":").append(String.format(Locale.ROOT, "%.3f", value.getValue()));
+            first = false;
+        }
+        json.append('}');
+    }
+
+    @Override
+    public synchronized void reset() {
+        frames = 0;
+        lastFrame = 0;
+        Arrays.fill(frameTimes, 0);
+        Arrays.fill(screenPixels, 0);
+        for (long[] history : stageHistory) {
+            Arrays.fill(history, 0);
+        }
+        for (long[] history : counterHistory) {
+            Arrays.fill(history, 0);
+        }
+        Arrays.fill(busyHistory, 0);
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.Map;
+
+/**
+ * File: FrameProfilerMXBean.java
+ * Created on 21.10.2026, 11:34:02
+ *
+ * JMX view of the {@link FrameProfiler} statistics, all taken over its last {@link FrameProfiler#HISTORY} frames.
+ *
+ * @author LWJGL2
+ */
+public interface FrameProfilerMXBean {
+
+    long getFrames();
+
+    double getFps();
+
+    /**
+     * @return p50, p95, p99 and max frame time in milliseconds
+     */
+    double[] getFrameTimePercentiles();
+
+    /**
+     * @return average milliseconds per frame of every stage
+     */
+    Map<String, Double> getStageMillis();
+
+    /**
+     * @return average count per frame of every counter
+     */
+    Map<String, Double> getCounters();
+
+    /**
+     * @return shaded pixels per screen pixel
+     */
+    double getOverdraw();
+
+    /**
+     * @return busy time per wall time of every thread slot that did work, see {@link FrameProfiler#WORKER_SLOTS}
+     */
+    Map<String, Double> getWorkerUtilization();
+
+    String getText();
+
+    String getJson();
+
+    void reset();
+}
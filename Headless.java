@@ -0,0 +1,268 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.imageio.ImageIO;
+import net.steelswing.engine.api.vecmath.MathUtil;
+import org.joml.Matrix4f;
+
+/**
+ * File: Headless.java
+ * Created on 18.10.2026, 20:05:48
+ *
+ * Offscreen batch renderer for machines without a display. Drives Buffer and TileRenderer directly, without a window,
+ * vsync or blit, and writes every frame either as a PNG sequence or as a raw RGBA stream to stdout.
+ * Encoding runs on a separate thread from a small pool of frame copies, so it overlaps rendering of the next frame.
+ *
+ * <pre>
+ * java -Djava.awt.headless=true Headless [-size 856x480] [-threads n] [-model teapot/debug.fbx] [-texture teapot/debug.png]
+ *      [-orbit frames | -poses file] [-png directory | -raw]
+ * </pre>
+ * -orbit spins the camera around the model like Example does. A poses file holds one camera per line,
+ * "x y z pitch yaw roll distance" as taken by MathUtil.createViewMatrix, # starts a comment.
+ * Per-frame timings go to stderr, followed by a summary.
+ *
+ * @author LWJGL2
+ */
+public class Headless {
+
+    static final int[] POISON = new int[0];
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = 856, height = 480;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        File model = new File("teapot", "debug.fbx"), texturePath = new File("teapot", "debug.png");
+        File pngDirectory = null;
+        boolean raw = false;
+        List<float[]> poses = orbit(120);
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "-threads":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-model":
+                    model = new File(args[++i]);
+                    break;
+                case "-texture":
+                    texturePath = new File(args[++i]);
+                    break;
+                case "-orbit":
+                    poses = orbit(Integer.parseInt(args[++i]));
+                    break;
+                case "-poses":
+                    poses = readPoses(new File(args[++i]));
+                    break;
+                case "-png":
+                    pngDirectory = new File(args[++i]);
+                    pngDirectory.mkdirs();
+                    break;
+                case "-raw":
+                    raw = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        List<StaticMeshLoader.Mesh> meshes = StaticMeshLoader.load(model.getAbsoluteFile());
+        Texture texture = new Texture(ImageIO.read(texturePath.getAbsoluteFile()));
+        Headless headless = new Headless(width, height, threadCount);
+        headless.render(meshes, texture, poses, pngDirectory, raw ? System.out : null, System.err);
+        headless.renderer.shutdown();
+    }
+
+    public final Buffer buffer;
+    public final TileRenderer renderer;
+
+    public Headless(int width, int height, int threadCount) {
+        buffer = new Buffer(width, height);
+        renderer = new TileRenderer(threadCount);
+    }
+
+    /**
+     * Renders one frame per pose. Frames are written to {@code pngDirectory} and/or {@code raw} if given,
+     * timings are reported to {@code log}.
+     *
+     * @return render time of every frame in nanoseconds
+     */
+    public long[] render(List<StaticMeshLoader.Mesh> meshes, Texture texture, List<float[]> poses, File pngDirectory, OutputStream raw, PrintStream log) throws Exception {
+        // free frame copies travel to the writer through pending and come back through free
+        BlockingQueue<int[]> free = new ArrayBlockingQueue<>(3);
+        BlockingQueue<int[]> pending = new ArrayBlockingQueue<>(4);
+        for (int i = 0; i < 3; i++) {
+            free.add(new int[buffer.width * buffer.height]);
+        }
+        Writer writer = new Writer(buffer.width, buffer.height, free, pending, pngDirectory, raw);
+        writer.start();
+
+        long[] frameTimes = new long[poses.size()];
+        long start = System.nanoTime();
+        for (int frame = 0; frame < poses.size(); frame++) {
+            long frameStart = System.nanoTime();
+            renderFrame(meshes, texture, poses.get(frame), 0, 0, buffer.width - 1, buffer.height - 1);
+            frameTimes[frame] = System.nanoTime() - frameStart;
+            FrameProfiler.frame(buffer);
+
+            if (pngDirectory != null || raw != null) {
+                long waitStart = System.nanoTime();
+                int[] copy = free.take();
+                System.arraycopy(buffer.pixelData, 0, copy, 0, copy.length);
+                pending.put(copy);
+                log.printf("frame %d render %.2f ms output wait %.2f ms%n", frame, frameTimes[frame] / 1e6, (System.nanoTime() - waitStart) / 1e6);
+            } else {
+                log.printf("frame %d render %.2f ms%n", frame, frameTimes[frame] / 1e6);
+            }
+        }
+        pending.put(POISON);
+        writer.join();
+        if (writer.failure != null) {
+            throw writer.failure;
+        }
+        long total = System.nanoTime() - start;
+
+        long[] sorted = frameTimes.clone();
+        Arrays.sort(sorted);
+        if (sorted.length > 0) {
+            log.printf("%d frames in %.1f ms (%.1f fps incl. output), render mean %.2f ms p50 %.2f ms p95 %.2f ms max %.2f ms%n",
+                    sorted.length, total / 1e6, sorted.length * 1e9 / total, Arrays.stream(sorted).average().getAsDouble() / 1e6,
+                    sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.95)] / 1e6, sorted[sorted.length - 1] / 1e6);
+        }
+        return frameTimes;
+    }
+
+    /**
+     * Draws one frame of the sequence into {@link #buffer}, or only its tiles overlapping the inclusive rectangle.
+     */
+    public void renderFrame(List<StaticMeshLoader.Mesh> meshes, Texture texture, float[] pose, int minX, int minY, int maxX, int maxY) {
+        camera(buffer, pose);
+        renderer.begin(buffer);
+        if (minX > 0 || minY > 0 || maxX < buffer.width - 1 || maxY < buffer.height - 1) {
+            renderer.setRegion(minX, minY, maxX, maxY);
+        }
+        renderer.clear(Color.black);
+        for (StaticMeshLoader.Mesh mesh : meshes) {
+            renderer.draw(texture, mesh);
+        }
+        renderer.end();
+    }
+
+    public static void camera(Buffer buffer, float[] pose) {
+        buffer.viewMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createViewMatrix(pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]));
+        buffer.projectionMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createProjectionMatrix(1000, -100, 70, buffer.width, buffer.height));
+        buffer.modelMatrix = new Matrix4f().translate(0, -0.5f, 0);
+    }
+
+    /**
+     * @return a full turn around the model split into {@code frames} poses, the camera of Example
+     */
+    public static List<float[]> orbit(int frames) {
+        List<float[]> poses = new ArrayList<>(frames);
+        for (int i = 0; i < frames; i++) {
+            poses.add(new float[]{0, 0, 0, 25, 360.0f * i / frames, 0, 2});
+        }
+        return poses;
+    }
+
+    public static List<float[]> readPoses(File file) throws IOException {
+        List<float[]> poses = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] values = line.split("\\s+");
+            if (values.length != 7) {
+                throw new IOException("Expected x y z pitch yaw roll distance: " + line);
+            }
+            float[] pose = new float[7];
+            for (int i = 0; i < 7; i++) {
+                pose[i] = Float.parseFloat(values[i]);
+            }
+            poses.add(pose);
+        }
+        return poses;
+    }
+
+    /**
+     * Encodes frame copies in order and hands the arrays back for reuse.
+     */
+    static class Writer extends Thread {
+
+        private final int width, height;
+        private final BlockingQueue<int[]> free, pending;
+        private final File pngDirectory;
+        private final OutputStream raw;
+        private final BufferedImage image;
+        private final byte[] rgba;
+        volatile Exception failure;
+
+        Writer(int width, int height, BlockingQueue<int[]> free, BlockingQueue<int[]> pending, File pngDirectory, OutputStream raw) {
+            super("Headless writer");
+            this.width = width;
+            this.height = height;
+            this.free = free;
+            this.pending = pending;
+            this.pngDirectory = pngDirectory;
+            this.raw = raw == null ? null : new BufferedOutputStream(raw, 1 << 16);
+            this.image = pngDirectory == null ? null : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            this.rgba = raw == null ? null : new byte[width * height * 4];
+        }
+
+        @Override
+        public void run() {
+            int frame = 0;
+            try {
+                for (int[] pixels; (pixels = pending.take()) != POISON; frame++) {
+                    try {
+                        if (failure == null) {
+                            write(pixels, frame);
+                        }
+                    } catch (IOException e) {
+                        // keep draining so the render loop never blocks on a dead writer
+                        failure = e;
+                    }
+                    free.put(pixels);
+                }
+                if (raw != null && failure == null) {
+                    raw.flush();
+                }
+            } catch (InterruptedException | IOException e) {
+                failure = e;
+            }
+        }
+
+        private void write(int[] pixels, int frame) throws IOException {
+            if (pngDirectory != null) {
+                image.setRGB(0, 0, width, height, pixels, 0, width);
+                ImageIO.write(image, "png", new File(pngDirectory, String.format("frame_%05d.png", frame)));
+            }
+            if (raw != null) {
+                for (int i = 0, o = 0; i < pixels.length; i++, o += 4) {
+                    int pixel = pixels[i];
+                    rgba[o] = (byte) (pixel >> 16);
+                    rgba[o + 1] = (byte) (pixel >> 8);
+                    rgba[o + 2] = (byte) pixel;
+                    rgba[o + 3] = (byte) 0xff;
+                }
+                raw.write(rgba);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+import java.awt.Color;
+import java.util.Arrays;
+import org.joml.Matrix4f;
+
+/**
+ * File: Lighting.java
+ * Created on 20.10.2026, 16:48:12
+ *
+ * Lambert diffuse and Blinn-Phong specular lighting from an ambient term and up to {@link #MAX_LIGHTS} directional or
+ * point lights, all in world space. Set on a {@link Buffer} it lights every mesh drawn with normals.
+ * <p>
+ * Shading is deferred: the rasterizer only stores the surface of every pixel that passes the depth test, see
+ * {@link Buffer#gBuffer}, and {@link Buffer#shade} lights each of them once, after TileRenderer finished a tile or
+ * after an immediate draw. Overdraw therefore costs a surface store, not lighting. PER_PIXEL stores the interpolated
+ * normal and position and evaluates the lights per pixel, GOURAUD evaluates them per vertex and stores the
+ * interpolated result.
+ * <p>
+ * Subclasses can replace the lighting model by overriding {@link #light} and {@link #shade}.
+ *
+ * @author LWJGL2
+ */
+public class Lighting {
+
+    public enum Mode {
+        GOURAUD, PER_PIXEL
+    }
+
+    public static final int MAX_LIGHTS = 8;
+
+    /**
+     * Floats {@link #light} writes per surface: diffuse red, green, blue, then specular red, green, blue.
+     * PER_PIXEL surfaces hold normal x, y, z and position x, y, z in the same place until they are shaded.
+     */
+    public static final int SURFACE_STRIDE = 6;
+
+    public Mode mode = Mode.PER_PIXEL;
+    public float ambientRed = 0.15f, ambientGreen = 0.15f, ambientBlue = 0.15f;
+    /**
+     * Blinn-Phong highlight strength and exponent, a specular of 0 leaves only Lambert diffuse.
+     */
+    public float specular = 0.25f, shininess = 32;
+
+    protected Light[] lights = new Light[0];
+
+    // world space camera position for the specular half vector, see prepare
+    protected float eyeX, eyeY, eyeZ;
+
+    public static class Light {
+
+        // point lights have a position and fall off to nothing at range, directional ones shine along x, y, z
+        protected final boolean point;
+        protected final float x, y, z, range;
+        protected final float red, green, blue;
+
+        protected Light(boolean point, float x, float y, float z, float range, Color color, float intensity) {
+            this.point = point;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.range = range;
+            this.red = color.getRed() / 255.0f * intensity;
+            this.green = color.getGreen() / 255.0f * intensity;
+            this.blue = color.getBlue() / 255.0f * intensity;
+        }
+    }
+
+    /**
+     * Adds a light shining along the world space direction x, y, z.
+     */
+    public Light addDirectional(float x, float y, float z, Color color, float intensity) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        return add(new Light(false, -x / length, -y / length, -z / length, 0, color, intensity));
+    }
+
+    /**
+     * Adds a light at the world space position x, y, z whose contribution falls off quadratically to 0 at {@code range}.
+     */
+    public Light addPoint(float x, float y, float z, float range, Color color, float intensity) {
+        return add(new Light(true, x, y, z, range, color, intensity));
+    }
+
+    public void remove(Light light) {
+        for (int i = 0; i < lights.length; i++) {
+            if (lights[i] == light) {
+                Light[] remaining = Arrays.copyOf(lights, lights.length - 1);
+                System.arraycopy(lights, i + 1, remaining, i, lights.length - i - 1);
+                lights = remaining;
+                return;
+            }
+        }
+    }
+
+    private Light add(Light light) {
+        if (lights.length == MAX_LIGHTS) {
+            throw new IllegalStateException("At most " + MAX_LIGHTS + " lights");
+        }
+        lights = Arrays.copyOf(lights, lights.length + 1);
+        lights[lights.length - 1] = light;
+        return light;
+    }
+
+    /**
+     * Takes the camera position from a view matrix without scale, before vertices are transformed or pixels shaded.
+     */
+    public void prepare(Matrix4f viewMatrix) {
+        eyeX = -(viewMatrix.m00() * viewMatrix.m30() + viewMatrix.m01() * viewMatrix.m31() + viewMatrix.m02() * viewMatrix.m32());
+        eyeY = -(viewMatrix.m10() * viewMatrix.m30() + viewMatrix.m11() * viewMatrix.m31() + viewMatrix.m12() * viewMatrix.m32());
+        eyeZ = -(viewMatrix.m20() * viewMatrix.m30() + viewMatrix.m21() * viewMatrix.m31() + viewMatrix.m22() * viewMatrix.m32());
+    }
+
+    /**
+     * Writes the light arriving at a world space surface with unit normal nx, ny, nz to {@code out} at {@code offset},
+     * laid out as described at {@link #SURFACE_STRIDE}. Safe to call from several threads.
+     */
+    public void light(float nx, float ny, float nz, float px, float py, float pz, float[] out, int offset) {
+        float diffuseRed = ambientRed, diffuseGreen = ambientGreen, diffuseBlue = ambientBlue;
+        float specularRed = 0, specularGreen = 0, specularBlue = 0;
+        float vx = eyeX - px, vy = eyeY - py, vz = eyeZ - pz;
+        float viewLength = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (viewLength > 0) {
+            vx /= viewLength;
+            vy /= viewLength;
+            vz /= viewLength;
+        }
+        for (Light light : lights) {
+            float lx = light.x, ly = light.y, lz = light.z, attenuation = 1;
+            if (light.point) {
+                lx -= px;
+                ly -= py;
+                lz -= pz;
+                float distance = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+                if (distance >= light.range) {
+                    continue;
+                }
+                float falloff = 1 - distance / light.range;
+                attenuation = falloff * falloff;
+                lx /= distance;
+                ly /= distance;
+                lz /= distance;
+            }
+            float lambert = nx * lx + ny * ly + nz * lz;
+            if (lambert <= 0) {
+                continue;
+            }
+            lambert *= attenuation;
+            diffuseRed += light.red * lambert;
+            diffuseGreen += light.green * lambert;
+            diffuseBlue += light.blue * lambert;
+            if (specular > 0) {
+                float hx = lx + vx, hy = ly + vy, hz = lz + vz;
+                float halfLength = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+                float facing = (nx * hx + ny * hy + nz * hz) / halfLength;
+                if (facing > 0) {
+                    float highlight = specular * attenuation * (float) Math.pow(facing, shininess);
+                    specularRed += light.red * highlight;
+                    specularGreen += light.green * highlight;
+                    specularBlue += light.blue * highlight;
+                }
+            }
+        }
+        out[offset] = diffuseRed;
+        out[offset + 1] = diffuseGreen;
+        out[offset + 2] = diffuseBlue;
+        out[offset + 3] = specularRed;
+        out[offset + 4] = specularGreen;
+        out[offset + 5] = specularBlue;
+    }
+
+    /**
+     * Lights the unlit color of one pixel with its stored surface, which it may overwrite.
+     */
+    public int shade(int albedo, float[] surface, int offset) {
+        if (mode == Mode.PER_PIXEL) {
+            float nx = surface[offset], ny = surface[offset + 1], nz = surface[offset + 2];
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+            light(nx, ny, nz, surface[offset + 3], surface[offset + 4], surface[offset + 5], surface, offset);
+        }
+        int red = channel(albedo >> 16 & 0xff, surface[offset], surface[offset + 3]);
+        int green = channel(albedo >> 8 & 0xff, surface[offset + 1], surface[offset + 4]);
+        int blue = channel(albedo & 0xff, surface[offset + 2], surface[offset + 5]);
+        return (albedo & 0xff000000) | red << 16 | green << 8 | blue;
+    }
+
+    private static int channel(int albedo, float diffuse, float specular) {
+        return Math.min(255, (int) (albedo * diffuse + specular * 255));
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * File: MeshCache.java
+ * Created on 18.10.2026, 21:14:30
+ *
+ * Binary cache of imported meshes, so Assimp runs once per source file version instead of on every launch.
+ * Entries live in {@link #directory} under the source name plus a hash of its size and contents, so an edited source
+ * simply misses. They are read through a memory-mapped buffer with bulk copies straight into the mesh arrays.
+ *
+ * Layout, little endian: magic, version, source length, source hash, mesh count, then per mesh
+ * vertex count, index count, furthest point, bounds[6], vertices, texture coordinates, normals, indices,
+ * meshlet count (0 without meshlets), meshlet vertex offsets, triangle offsets, spheres, cones,
+ * LOD error, LOD count and every LOD as a nested mesh in the same layout.
+ *
+ * @author LWJGL2
+ */
+public class MeshCache {
+
+    public static final int MAGIC = 0x534d4331; // "SMC1"
+    /**
+     * Bump whenever the layout or the import itself (e.g. {@link StaticMeshLoader#ASSIMP_POST}) changes.
+     */
+    public static final int VERSION = 4;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int MESH_HEADER_SIZE = 4 + 4 + 4 + 6 * 4;
+
+    public static File directory = new File(System.getProperty("meshcache.dir", ".meshcache"));
+    public static boolean enabled = !Boolean.getBoolean("meshcache.disabled");
+
+    public static List<StaticMeshLoader.Mesh> load(File source) throws IOException {
+        if (!enabled) {
+            return StaticMeshLoader.importFile(source);
+        }
+        long length = source.length();
+        long hash = hash(source);
+        File entry = new File(directory, source.getName() + "-" + Long.toHexString(hash) + (StaticMeshLoader.optimize ? "-optimized" : "")
+                + (StaticMeshLoader.meshlets ? "-meshlets" : "") + (StaticMeshLoader.lods ? "-lods" : "") + ".bin");
+
+        if (entry.isFile()) {
+            List<StaticMeshLoader.Mesh> meshes = read(entry, length, hash);
+            if (meshes != null) {
+                return meshes;
+            }
+        }
+
+        List<StaticMeshLoader.Mesh> meshes = StaticMeshLoader.importFile(source);
+        try {
+            write(entry, meshes, length, hash);
+        } catch (IOException e) {
+            // the cache is only an optimization, a read-only or full disk must not break loading
+            System.err.println("Could not write mesh cache " + entry + ": " + e);
+        }
+        return meshes;
+    }
+
+    /**
+     * CRC32 of the file contents, mixed with its length.
+     */
+    public static long hash(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position)));
+            }
+            return crc.getValue() ^ (size << 32);
+        }
+    }
+
+    /**
+     * @return the cached meshes, or null if the entry does not belong to this source or is damaged
+     */
+    public static List<StaticMeshLoader.Mesh> read(File entry, long sourceLength, long sourceHash) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry.toPath())) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != sourceLength || buffer.getLong() != sourceHash) {
+                return null;
+            }
+
+            int meshCount = buffer.getInt();
+            List<StaticMeshLoader.Mesh> meshes = new ArrayList<>(meshCount);
+            for (int i = 0; i < meshCount; i++) {
+                StaticMeshLoader.Mesh mesh = readMesh(buffer);
+                if (mesh == null) {
+                    return null;
+                }
+                meshes.add(mesh);
+            }
+            return meshes;
+        }
+    }
+
+    private static StaticMeshLoader.Mesh readMesh(ByteBuffer buffer) {
+        if (buffer.remaining() < MESH_HEADER_SIZE) {
+            return null;
+        }
+        int vertexCount = buffer.getInt();
+        int indexCount = buffer.getInt();
+        float furthestPoint = buffer.getFloat();
+        float[] bounds = new float[6];
+        buffer.asFloatBuffer().get(bounds);
+        buffer.position(buffer.position() + bounds.length * 4);
+        if (vertexCount < 0 || indexCount < 0 || buffer.remaining() < ((long) vertexCount * 8 + indexCount) * 4) {
+            return null;
+        }
+
+        float[] vertices = new float[vertexCount * 3];
+        float[] textureCoords = new float[vertexCount * 2];
+        float[] normals = new float[vertexCount * 3];
+        int[] indices = new int[indexCount];
+        readFloats(buffer, vertices);
+        readFloats(buffer, textureCoords);
+        readFloats(buffer, normals);
+        readInts(buffer, indices);
+        StaticMeshLoader.Mesh mesh = new StaticMeshLoader.Mesh(vertices, textureCoords, normals, indices, furthestPoint, bounds);
+
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int meshletCount = buffer.getInt();
+        if (meshletCount < 0 || buffer.remaining() < ((long) (meshletCount + 1) * 2 + meshletCount * 8L) * 4) {
+            return null;
+        }
+        if (meshletCount > 0) {
+            int[] vertexOffsets = new int[meshletCount + 1], triangleOffsets = new int[meshletCount + 1];
+            float[] spheres = new float[meshletCount * 4], cones = new float[meshletCount * 4];
+            readInts(buffer, vertexOffsets);
+            readInts(buffer, triangleOffsets);
+            readFloats(buffer, spheres);
+            readFloats(buffer, cones);
+            mesh.meshlets = new Meshlets(meshletCount, vertexOffsets, triangleOffsets, spheres, cones);
+        }
+
+        if (buffer.remaining() < 8) {
+            return null;
+        }
+        mesh.lodError = buffer.getFloat();
+        int lodCount = buffer.getInt();
+        if (lodCount < 0 || lodCount > MeshSimplifier.MAX_LODS) {
+            return null;
+        }
+        mesh.lods = new StaticMeshLoader.Mesh[lodCount];
+        for (int i = 0; i < lodCount; i++) {
+            mesh.lods[i] = readMesh(buffer);
+            if (mesh.lods[i] == null) {
+                return null;
+            }
+        }
+        return mesh;
+    }
+
+    private static void readFloats(ByteBuffer buffer, float[] values) {
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 4);
+    }
+
+    private static void readInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 4);
+    }
+
+    /**
+     * Writes to a temporary file first and moves it into place, so a crash never leaves a truncated entry behind.
+     */
+    public static void write(File entry, List<StaticMeshLoader.Mesh> meshes, long sourceLength, long sourceHash) throws IOException {
+        long size = HEADER_SIZE;
+        for (StaticMeshLoader.Mesh mesh : meshes) {
+            size += size(mesh);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Meshes too large to cache: " + size + " bytes");
+        }
+
+        File parent = entry.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temporary = File.createTempFile(entry.getName(), ".tmp", parent);
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(temporary, "rw"); FileChannel channel = file.getChannel()) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).putLong(sourceHash).putInt(meshes.size());
+                for (StaticMeshLoader.Mesh mesh : meshes) {
+                    writeMesh(buffer, mesh);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    private static long size(StaticMeshLoader.Mesh mesh) throws IOException {
+        int vertexCount = mesh.vertices.length / 3;
+        if (mesh.textureCoords.length != vertexCount * 2 || mesh.normals.length != vertexCount * 3) {
+            throw new IOException("Mesh attributes do not match its " + vertexCount + " vertices");
+        }
+        long size = MESH_HEADER_SIZE + (mesh.vertices.length + mesh.textureCoords.length + mesh.normals.length + mesh.indices.length) * 4L;
+        size += 4 + (mesh.meshlets == null ? 0 : ((mesh.meshlets.count + 1) * 2 + mesh.meshlets.count * 8L) * 4);
+        size += 4 + 4;
+        for (StaticMeshLoader.Mesh lod : mesh.lods) {
+            size += size(lod);
+        }
+        return size;
+    }
+
+    private static void writeMesh(ByteBuffer buffer, StaticMeshLoader.Mesh mesh) {
+        buffer.putInt(mesh.vertices.length / 3).putInt(mesh.indices.length).putFloat(mesh.furthestPoint);
+        writeFloats(buffer, mesh.bounds);
+        writeFloats(buffer, mesh.vertices);
+        writeFloats(buffer, mesh.textureCoords);
+        writeFloats(buffer, mesh.normals);
+        writeInts(buffer, mesh.indices);
+        Meshlets meshlets = mesh.meshlets;
+        buffer.putInt(meshlets == null ? 0 : meshlets.count);
+        if (meshlets != null) {
+            writeInts(buffer, Arrays.copyOf(meshlets.vertexOffsets, meshlets.count + 1));
+            writeInts(buffer, Arrays.copyOf(meshlets.triangleOffsets, meshlets.count + 1));
+            writeFloats(buffer, Arrays.copyOf(meshlets.spheres, meshlets.count * 4));
+            writeFloats(buffer, Arrays.copyOf(meshlets.cones, meshlets.count * 4));
+        }
+        buffer.putFloat(mesh.lodError).putInt(mesh.lods.length);
+        for (StaticMeshLoader.Mesh lod : mesh.lods) {
+            writeMesh(buffer, lod);
+        }
+    }
+
+    private static void writeFloats(ByteBuffer buffer, float[] values) {
+        buffer.asFloatBuffer().put(values);
+        buffer.position(buffer.position() + values.length * 4);
+    }
+
+    private static void writeInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * 4);
+    }
+}
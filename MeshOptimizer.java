@@ -0,0 +1,448 @@
+import java.util.Arrays;
+
+/**
+ * File: MeshOptimizer.java
+ * Created on 19.10.2026, 9:42:17
+ *
+ * Load-time reordering of mesh data. Triangles are first sorted for post-transform vertex cache locality
+ * (Tom Forsyth's linear-speed vertex cache optimization), then split into clusters at cache reloads which are
+ * ordered so that outward facing clusters come first and hide the rest (a Tipsify style overdraw pass).
+ * Finally vertices are renumbered in first-use order, so triangle setup walks the vertex arrays almost linearly.
+ *
+ * ACMR (transformed vertices per triangle for a FIFO cache of {@link #CACHE_SIZE}) and overdraw (shaded pixels
+ * per covered pixel, averaged over six axis-aligned orthographic views) are measured before and after.
+ *
+ * @author LWJGL2
+ */
+public class MeshOptimizer {
+
+    public static final int CACHE_SIZE = 32;
+    /**
+     * A cluster may grow while its ACMR stays within this factor of the ACMR of the whole cache-optimized mesh.
+     */
+    public static final float OVERDRAW_THRESHOLD = 1.05f;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    private static final int OVERDRAW_GRID = 256;
+
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[64];
+
+    static {
+        for (int i = 0; i < CACHE_SCORES.length; i++) {
+            CACHE_SCORES[i] = cacheScore(i);
+        }
+        for (int i = 1; i < VALENCE_SCORES.length; i++) {
+            VALENCE_SCORES[i] = valenceScore(i);
+        }
+    }
+
+    public static class Report {
+
+        public int triangles, verticesBefore, verticesAfter;
+        public float acmrBefore, acmrAfter;
+        public float overdrawBefore, overdrawAfter;
+
+        @Override
+        public String toString() {
+            return String.format("%d triangles, %d -> %d vertices, ACMR %.3f -> %.3f, overdraw %.3f -> %.3f",
+                    triangles, verticesBefore, verticesAfter, acmrBefore, acmrAfter, overdrawBefore, overdrawAfter);
+        }
+    }
+
+    /**
+     * Runs all passes on the mesh arrays in place of the old ones.
+     */
+    public static Report optimize(StaticMeshLoader.Mesh mesh) {
+        Report report = new Report();
+        int vertexCount = mesh.vertices.length / 3;
+        report.triangles = mesh.indices.length / 3;
+        report.verticesBefore = vertexCount;
+        report.acmrBefore = acmr(mesh.indices, vertexCount, CACHE_SIZE);
+        report.overdrawBefore = overdraw(mesh.vertices, mesh.indices);
+
+        int[] indices = optimizeVertexCache(mesh.indices, vertexCount);
+        indices = optimizeOverdraw(indices, mesh.vertices, OVERDRAW_THRESHOLD);
+        mesh.indices = indices;
+        optimizeVertexFetch(mesh);
+
+        report.verticesAfter = mesh.vertices.length / 3;
+        report.acmrAfter = acmr(mesh.indices, report.verticesAfter, CACHE_SIZE);
+        report.overdrawAfter = overdraw(mesh.vertices, mesh.indices);
+        return report;
+    }
+
+    /**
+     * @return the triangles of {@code indices} reordered to maximize post-transform vertex cache hits
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+
+        // triangles adjacent to every vertex, as offsets into one list
+        int[] remaining = new int[vertexCount];
+        for (int index : indices) {
+            remaining[index]++;
+        }
+        int[] adjacencyOffset = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyOffset[v + 1] = adjacencyOffset[v] + remaining[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyOffset, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScore[v] = vertexScore(-1, remaining[v]);
+        }
+        float[] triangleScore = new float[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+        }
+        boolean[] emitted = new boolean[triangleCount];
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] nextCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int[] result = new int[indices.length];
+        int cursor = 0;
+        int best = -1;
+
+        for (int written = 0; written < triangleCount; written++) {
+            if (best < 0) {
+                // nothing adjacent to the cache is left, continue with the next triangle in input order
+                while (emitted[cursor]) {
+                    cursor++;
+                }
+                best = cursor;
+            }
+            emitted[best] = true;
+            System.arraycopy(indices, best * 3, result, written * 3, 3);
+
+            // the emitted triangle goes to the front of the cache, the others move back
+            int nextCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[best * 3 + k];
+                if (nextCount == 0 || (nextCache[0] != v && nextCache[nextCount - 1] != v)) {
+                    nextCache[nextCount++] = v;
+                }
+                // drop the triangle from the adjacency of its vertices
+                int end = adjacencyOffset[v] + remaining[v] - 1;
+                for (int a = adjacencyOffset[v]; a <= end; a++) {
+                    if (adjacency[a] == best) {
+                        adjacency[a] = adjacency[end];
+                        break;
+                    }
+                }
+                remaining[v]--;
+            }
+            int emittedCount = nextCount;
+            for (int c = 0; c < cacheCount; c++) {
+                int v = cache[c];
+                boolean fresh = true;
+                for (int e = 0; e < emittedCount; e++) {
+                    fresh &= v != nextCache[e];
+                }
+                if (fresh) {
+                    nextCache[nextCount++] = v;
+                }
+            }
+            int[] swap = cache;
+            cache = nextCache;
+            nextCache = swap;
+            cacheCount = nextCount;
+
+            // rescore every vertex that was or still is in the cache and the triangles around them
+            for (int c = 0; c < cacheCount; c++) {
+                int v = cache[c];
+                float score = vertexScore(c < CACHE_SIZE ? c : -1, remaining[v]);
+                float delta = score - vertexScore[v];
+                vertexScore[v] = score;
+                for (int a = adjacencyOffset[v]; a < adjacencyOffset[v] + remaining[v]; a++) {
+                    triangleScore[adjacency[a]] += delta;
+                }
+            }
+            cacheCount = Math.min(cacheCount, CACHE_SIZE);
+
+            // the next triangle is the best one touching the cache
+            best = -1;
+            float bestScore = -1;
+            for (int c = 0; c < cacheCount; c++) {
+                int v = cache[c];
+                for (int a = adjacencyOffset[v]; a < adjacencyOffset[v] + remaining[v]; a++) {
+                    int t = adjacency[a];
+                    if (triangleScore[t] > bestScore) {
+                        bestScore = triangleScore[t];
+                        best = t;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static float vertexScore(int cachePosition, int remaining) {
+        if (remaining == 0) {
+            return -1;
+        }
+        float score = cachePosition >= 0 ? CACHE_SCORES[cachePosition] : 0;
+        return score + (remaining < VALENCE_SCORES.length ? VALENCE_SCORES[remaining] : valenceScore(remaining));
+    }
+
+    private static float cacheScore(int cachePosition) {
+        if (cachePosition < 3) {
+            // the last triangle's vertices score the same, so strips do not win over fans
+            return LAST_TRIANGLE_SCORE;
+        }
+        return (float) Math.pow(1.0f - (cachePosition - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+    }
+
+    // vertices with few triangles left are worth finishing off
+    private static float valenceScore(int remaining) {
+        return VALENCE_BOOST_SCALE * (float) Math.pow(remaining, -VALENCE_BOOST_POWER);
+    }
+
+    /**
+     * Splits cache-optimized triangles into clusters and orders them so that clusters facing away from the mesh center,
+     * which are likely to occlude the others, are drawn first. Clusters start wherever the cache would reload all three
+     * vertices, or where the running ACMR of a cluster drops below {@code threshold} times the ACMR of the whole mesh,
+     * so the vertex cache efficiency stays close to the input order.
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] vertices, float threshold) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount == 0) {
+            return indices;
+        }
+        int vertexCount = vertices.length / 3;
+        float meshAcmr = acmr(indices, vertexCount, CACHE_SIZE);
+
+        // cluster boundaries
+        int[] clusterStart = new int[triangleCount + 1];
+        int clusterCount = 0;
+        int[] timestamp = new int[vertexCount];
+        int time = CACHE_SIZE + 1;
+        int clusterMisses = 0, clusterTriangles = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int misses = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                if (time - timestamp[v] > CACHE_SIZE) {
+                    timestamp[v] = time++;
+                    misses++;
+                }
+            }
+            boolean hard = misses == 3;
+            boolean soft = clusterTriangles > 0 && (float) clusterMisses / clusterTriangles <= meshAcmr * threshold && misses > 1;
+            if (t == 0 || hard || soft) {
+                clusterStart[clusterCount++] = t;
+                clusterMisses = 0;
+                clusterTriangles = 0;
+            }
+            clusterMisses += misses;
+            clusterTriangles++;
+        }
+        clusterStart[clusterCount] = triangleCount;
+
+        // mesh centroid, weighted by triangle area
+        float[] centroid = new float[3];
+        float totalArea = 0;
+        float[] normal = new float[3];
+        for (int t = 0; t < triangleCount; t++) {
+            float area = faceNormal(indices, vertices, t, normal);
+            for (int axis = 0; axis < 3; axis++) {
+                centroid[axis] += area * (vertices[indices[t * 3] * 3 + axis] + vertices[indices[t * 3 + 1] * 3 + axis] + vertices[indices[t * 3 + 2] * 3 + axis]) / 3;
+            }
+            totalArea += area;
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            centroid[axis] /= Math.max(totalArea, Float.MIN_NORMAL);
+        }
+
+        // sort key: how far the cluster faces away from the center
+        long[] keys = new long[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            float[] clusterCentroid = new float[3];
+            float[] clusterNormal = new float[3];
+            float clusterArea = 0;
+            for (int t = clusterStart[c]; t < clusterStart[c + 1]; t++) {
+                float area = faceNormal(indices, vertices, t, normal);
+                for (int axis = 0; axis < 3; axis++) {
+                    clusterCentroid[axis] += area * (vertices[indices[t * 3] * 3 + axis] + vertices[indices[t * 3 + 1] * 3 + axis] + vertices[indices[t * 3 + 2] * 3 + axis]) / 3;
+                    clusterNormal[axis] += normal[axis] * area;
+                }
+                clusterArea += area;
+            }
+            float length = (float) Math.sqrt(clusterNormal[0] * clusterNormal[0] + clusterNormal[1] * clusterNormal[1] + clusterNormal[2] * clusterNormal[2]);
+            float dot = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                dot += (clusterCentroid[axis] / Math.max(clusterArea, Float.MIN_NORMAL) - centroid[axis]) * clusterNormal[axis] / Math.max(length, Float.MIN_NORMAL);
+            }
+            // descending by dot, stable by cluster index; flipping the sign bits makes float bits sort like ints
+            int bits = Float.floatToIntBits(-dot);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            keys[c] = ((long) bits << 32) | c;
+        }
+        Arrays.sort(keys);
+
+        int[] result = new int[indices.length];
+        int written = 0;
+        for (long key : keys) {
+            int c = (int) key;
+            int count = (clusterStart[c + 1] - clusterStart[c]) * 3;
+            System.arraycopy(indices, clusterStart[c] * 3, result, written, count);
+            written += count;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the unit normal of triangle {@code t} to {@code normal}.
+     *
+     * @return the triangle area
+     */
+    private static float faceNormal(int[] indices, float[] vertices, int t, float[] normal) {
+        int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+        float abX = vertices[b] - vertices[a], abY = vertices[b + 1] - vertices[a + 1], abZ = vertices[b + 2] - vertices[a + 2];
+        float acX = vertices[c] - vertices[a], acY = vertices[c + 1] - vertices[a + 1], acZ = vertices[c + 2] - vertices[a + 2];
+        float x = abY * acZ - abZ * acY, y = abZ * acX - abX * acZ, z = abX * acY - abY * acX;
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        float inverse = length > 0 ? 1 / length : 0;
+        normal[0] = x * inverse;
+        normal[1] = y * inverse;
+        normal[2] = z * inverse;
+        return length * 0.5f;
+    }
+
+    /**
+     * Renumbers vertices in the order the indices first use them and drops unreferenced ones.
+     */
+    public static void optimizeVertexFetch(StaticMeshLoader.Mesh mesh) {
+        int vertexCount = mesh.vertices.length / 3;
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int index : mesh.indices) {
+            if (remap[index] < 0) {
+                remap[index] = next++;
+            }
+        }
+        float[] vertices = new float[next * 3], textureCoords = new float[next * 2], normals = new float[next * 3];
+        for (int v = 0; v < vertexCount; v++) {
+            int to = remap[v];
+            if (to >= 0) {
+                System.arraycopy(mesh.vertices, v * 3, vertices, to * 3, 3);
+                System.arraycopy(mesh.textureCoords, v * 2, textureCoords, to * 2, 2);
+                System.arraycopy(mesh.normals, v * 3, normals, to * 3, 3);
+            }
+        }
+        int[] indices = new int[mesh.indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = remap[mesh.indices[i]];
+        }
+        mesh.vertices = vertices;
+        mesh.textureCoords = textureCoords;
+        mesh.normals = normals;
+        mesh.indices = indices;
+    }
+
+    /**
+     * @return average cache misses per triangle for a FIFO cache of {@code cacheSize} vertices, between 0.5 and 3
+     */
+    public static float acmr(int[] indices, int vertexCount, int cacheSize) {
+        if (indices.length == 0) {
+            return 0;
+        }
+        int[] timestamp = new int[vertexCount];
+        int time = cacheSize + 1;
+        int misses = 0;
+        for (int index : indices) {
+            if (time - timestamp[index] > cacheSize) {
+                timestamp[index] = time++;
+                misses++;
+            }
+        }
+        return misses * 3.0f / indices.length;
+    }
+
+    /**
+     * @return pixels passing the depth test per covered pixel, rasterized orthographically along +-x, +-y and +-z
+     * with back faces culled
+     */
+    public static float overdraw(float[] vertices, int[] indices) {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < vertices.length; i += 3) {
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], vertices[i + axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], vertices[i + axis]);
+            }
+        }
+        float extent = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+        if (indices.length == 0 || extent <= 0) {
+            return 0;
+        }
+        float scale = (OVERDRAW_GRID - 1) / extent;
+
+        float[] depth = new float[OVERDRAW_GRID * OVERDRAW_GRID];
+        long shaded = 0, covered = 0;
+        for (int view = 0; view < 6; view++) {
+            int axis = view >> 1;
+            float sign = (view & 1) == 0 ? 1 : -1;
+            int uAxis = (axis + 1) % 3, vAxis = (axis + 2) % 3;
+            Arrays.fill(depth, -Float.MAX_VALUE);
+            for (int t = 0; t < indices.length; t += 3) {
+                int a = indices[t] * 3, b = indices[t + 1] * 3, c = indices[t + 2] * 3;
+                float u0 = (vertices[a + uAxis] - bounds[uAxis]) * scale, v0 = (vertices[a + vAxis] - bounds[vAxis]) * scale;
+                float u1 = (vertices[b + uAxis] - bounds[uAxis]) * scale, v1 = (vertices[b + vAxis] - bounds[vAxis]) * scale;
+                float u2 = (vertices[c + uAxis] - bounds[uAxis]) * scale, v2 = (vertices[c + vAxis] - bounds[vAxis]) * scale;
+                float area = ((u1 - u0) * (v2 - v0) - (u2 - u0) * (v1 - v0)) * sign;
+                if (area <= 0) {
+                    continue;
+                }
+                shaded += rasterize(depth, u0, v0, sign * vertices[a + axis], u1, v1, sign * vertices[b + axis], u2, v2, sign * vertices[c + axis], area * sign);
+            }
+            for (float d : depth) {
+                if (d != -Float.MAX_VALUE) {
+                    covered++;
+                }
+            }
+        }
+        return covered == 0 ? 0 : (float) shaded / covered;
+    }
+
+    /**
+     * @return pixels of the overdraw grid whose depth test passed
+     */
+    private static int rasterize(float[] depth, float u0, float v0, float z0, float u1, float v1, float z1, float u2, float v2, float z2, float area) {
+        int minU = Math.max(0, (int) Math.ceil(Math.min(u0, Math.min(u1, u2)) - 0.5f));
+        int maxU = Math.min(OVERDRAW_GRID - 1, (int) Math.floor(Math.max(u0, Math.max(u1, u2)) - 0.5f));
+        int minV = Math.max(0, (int) Math.ceil(Math.min(v0, Math.min(v1, v2)) - 0.5f));
+        int maxV = Math.min(OVERDRAW_GRID - 1, (int) Math.floor(Math.max(v0, Math.max(v1, v2)) - 0.5f));
+        float inverseArea = 1 / area;
+        int passed = 0;
+        for (int v = minV; v <= maxV; v++) {
+            float y = v + 0.5f;
+            for (int u = minU; u <= maxU; u++) {
+                float x = u + 0.5f;
+                float w0 = ((u1 - x) * (v2 - y) - (u2 - x) * (v1 - y)) * inverseArea;
+                float w1 = ((u2 - x) * (v0 - y) - (u0 - x) * (v2 - y)) * inverseArea;
+                float w2 = 1 - w0 - w1;
+                if (w0 < 0 || w1 < 0 || w2 < 0) {
+                    continue;
+                }
+                float z = w0 * z0 + w1 * z1 + w2 * z2;
+                int index = u + v * OVERDRAW_GRID;
+                if (z > depth[index]) {
+                    depth[index] = z;
+                    passed++;
+                }
+            }
+        }
+        return passed;
+    }
+}
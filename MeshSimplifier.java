@@ -0,0 +1,301 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * File: MeshSimplifier.java
+ * Created on 19.10.2026, 15:31:08
+ *
+ * Quadric error metric simplification (Garland and Heckbert) by collapsing vertices onto a neighbour, so no new
+ * vertices are made up. Vertices on open borders and on attribute seams (several vertices sharing one position)
+ * are locked, which keeps silhouettes and texture seams intact. Collapses that would flip a triangle are skipped.
+ * <p>
+ * {@link #buildLods} turns the result into a chain of coarser meshes, each half the triangles of the previous one,
+ * with its own compacted vertex arrays so far levels skip the transform of vertices they no longer use.
+ *
+ * @author LWJGL2
+ */
+public class MeshSimplifier {
+
+    public static final int MAX_LODS = 8;
+    /**
+     * Levels stop once they would have fewer triangles than this, or shrink by less than a tenth.
+     */
+    public static final int MIN_LOD_TRIANGLES = 64;
+
+    // a, b, c, d of the plane ax + by + cz + d = 0 expanded into the upper half of the symmetric 4x4 matrix,
+    // weighted by triangle area, followed by the summed area
+    private static final int QUADRIC_SIZE = 11;
+
+    /**
+     * Builds coarser levels of a mesh whose arrays are final, e.g. after {@link MeshOptimizer}.
+     *
+     * @return levels 1..n with {@link StaticMeshLoader.Mesh#lodError} set, empty if the mesh does not simplify
+     */
+    public static StaticMeshLoader.Mesh[] buildLods(StaticMeshLoader.Mesh mesh) {
+        List<StaticMeshLoader.Mesh> lods = new ArrayList<>();
+        int[] indices = mesh.indices;
+        float error = 0;
+        float[] levelError = new float[1];
+        while (lods.size() < MAX_LODS && indices.length / 3 / 2 >= MIN_LOD_TRIANGLES) {
+            int[] simplified = simplify(mesh.vertices, indices, indices.length / 2, levelError);
+            if (simplified.length > indices.length * 9 / 10) {
+                break;
+            }
+            // errors of consecutive levels add up, each level is simplified from the previous one
+            error += levelError[0];
+            indices = simplified;
+
+            StaticMeshLoader.Mesh lod = new StaticMeshLoader.Mesh(mesh.vertices, mesh.textureCoords, mesh.normals,
+                    MeshOptimizer.optimizeVertexCache(simplified, mesh.vertices.length / 3), mesh.furthestPoint);
+            MeshOptimizer.optimizeVertexFetch(lod);
+            lod.lodError = error;
+            lods.add(lod);
+        }
+        return lods.toArray(new StaticMeshLoader.Mesh[0]);
+    }
+
+    /**
+     * @param error receives the object space distance error of the simplification
+     * @return simplified indices referencing the same vertices, with at most {@code targetIndexCount} indices
+     * unless locked vertices or flips stop the collapses earlier
+     */
+    public static int[] simplify(float[] vertices, int[] indices, int targetIndexCount, float[] error) {
+        int vertexCount = vertices.length / 3;
+        boolean[] locked = findLockedVertices(vertices, indices);
+
+        double[] quadrics = new double[vertexCount * QUADRIC_SIZE];
+        for (int t = 0; t < indices.length; t += 3) {
+            addPlane(quadrics, vertices, indices[t], indices[t + 1], indices[t + 2]);
+        }
+
+        int[] remap = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            remap[v] = v;
+        }
+        int[] current = indices.clone();
+        int indexCount = current.length;
+        double maxError = 0;
+
+        int[] triangleOffsets = new int[vertexCount + 1];
+        int[] vertexTriangles = new int[indexCount];
+        int[] bestTarget = new int[vertexCount];
+        double[] bestCost = new double[vertexCount];
+        boolean[] touched = new boolean[vertexCount];
+        long[] order = new long[vertexCount];
+
+        while (indexCount > targetIndexCount) {
+            buildAdjacency(current, indexCount, vertexCount, triangleOffsets, vertexTriangles);
+
+            // cheapest collapse of every unlocked vertex onto one of its neighbours
+            Arrays.fill(bestTarget, -1);
+            Arrays.fill(bestCost, Double.MAX_VALUE);
+            for (int i = 0; i < indexCount; i++) {
+                int from = current[i];
+                if (locked[from]) {
+                    continue;
+                }
+                int triangle = i - i % 3;
+                for (int k = 0; k < 3; k++) {
+                    int to = current[triangle + k];
+                    if (to == from) {
+                        continue;
+                    }
+                    double cost = collapseCost(quadrics, vertices, from, to);
+                    if (cost < bestCost[from]) {
+                        bestCost[from] = cost;
+                        bestTarget[from] = to;
+                    }
+                }
+            }
+            int candidates = 0;
+            for (int v = 0; v < vertexCount; v++) {
+                if (bestTarget[v] >= 0) {
+                    // costs are non-negative, so their bits sort like the values
+                    order[candidates++] = ((long) Float.floatToIntBits((float) bestCost[v]) << 32) | v;
+                }
+            }
+            if (candidates == 0) {
+                break;
+            }
+            Arrays.sort(order, 0, candidates);
+
+            // collapse cheapest first, each vertex at most once per pass so the adjacency stays valid
+            Arrays.fill(touched, false);
+            int collapses = 0;
+            int removedIndices = 0;
+            for (int c = 0; c < candidates && indexCount - removedIndices > targetIndexCount; c++) {
+                int from = (int) order[c];
+                int to = bestTarget[from];
+                if (touched[from] || touched[to] || flips(vertices, current, triangleOffsets, vertexTriangles, from, to)) {
+                    continue;
+                }
+                for (int a = triangleOffsets[from]; a < triangleOffsets[from + 1]; a++) {
+                    int triangle = vertexTriangles[a];
+                    boolean shared = false;
+                    for (int k = 0; k < 3; k++) {
+                        int v = current[triangle + k];
+                        touched[v] = true;
+                        shared |= v == to;
+                    }
+                    if (shared) {
+                        removedIndices += 3;
+                    }
+                }
+                for (int q = 0; q < QUADRIC_SIZE; q++) {
+                    quadrics[to * QUADRIC_SIZE + q] += quadrics[from * QUADRIC_SIZE + q];
+                }
+                remap[from] = to;
+                maxError = Math.max(maxError, bestCost[from]);
+                collapses++;
+            }
+            if (collapses == 0) {
+                break;
+            }
+
+            // apply this pass and drop triangles that became degenerate
+            int written = 0;
+            for (int t = 0; t < indexCount; t += 3) {
+                int a = remap[current[t]], b = remap[current[t + 1]], c = remap[current[t + 2]];
+                if (a != b && b != c && a != c) {
+                    current[written++] = a;
+                    current[written++] = b;
+                    current[written++] = c;
+                }
+            }
+            indexCount = written;
+            for (int v = 0; v < vertexCount; v++) {
+                remap[v] = v;
+            }
+        }
+        error[0] = (float) Math.sqrt(maxError);
+        return Arrays.copyOf(current, indexCount);
+    }
+
+    /**
+     * Border vertices (on an edge used by one triangle only) and seam vertices (sharing their position with another
+     * vertex) must not move.
+     */
+    private static boolean[] findLockedVertices(float[] vertices, int[] indices) {
+        int vertexCount = vertices.length / 3;
+        boolean[] locked = new boolean[vertexCount];
+
+        // seams: sort vertices by position and lock runs of equal ones
+        Integer[] sorted = new Integer[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            sorted[v] = v;
+        }
+        Arrays.sort(sorted, (a, b) -> {
+            for (int axis = 0; axis < 3; axis++) {
+                int compare = Float.compare(vertices[a * 3 + axis], vertices[b * 3 + axis]);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return 0;
+        });
+        for (int i = 1; i < vertexCount; i++) {
+            int a = sorted[i - 1], b = sorted[i];
+            if (vertices[a * 3] == vertices[b * 3] && vertices[a * 3 + 1] == vertices[b * 3 + 1] && vertices[a * 3 + 2] == vertices[b * 3 + 2]) {
+                locked[a] = true;
+                locked[b] = true;
+            }
+        }
+
+        // borders: an edge without its opposite half-edge
+        long[] edges = new long[indices.length];
+        for (int t = 0; t < indices.length; t += 3) {
+            for (int k = 0; k < 3; k++) {
+                int a = indices[t + k], b = indices[t + (k + 1) % 3];
+                edges[t + k] = ((long) a << 32) | b;
+            }
+        }
+        long[] sortedEdges = edges.clone();
+        Arrays.sort(sortedEdges);
+        for (long edge : edges) {
+            int a = (int) (edge >>> 32), b = (int) edge;
+            if (Arrays.binarySearch(sortedEdges, ((long) b << 32) | a) < 0) {
+                locked[a] = true;
+                locked[b] = true;
+            }
+        }
+        return locked;
+    }
+
+    private static void buildAdjacency(int[] indices, int indexCount, int vertexCount, int[] offsets, int[] triangles) {
+        Arrays.fill(offsets, 0);
+        for (int i = 0; i < indexCount; i++) {
+            offsets[indices[i] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < indexCount; i++) {
+            triangles[fill[indices[i]]++] = i - i % 3;
+        }
+    }
+
+    private static void addPlane(double[] quadrics, float[] vertices, int a, int b, int c) {
+        double abX = vertices[b * 3] - vertices[a * 3], abY = vertices[b * 3 + 1] - vertices[a * 3 + 1], abZ = vertices[b * 3 + 2] - vertices[a * 3 + 2];
+        double acX = vertices[c * 3] - vertices[a * 3], acY = vertices[c * 3 + 1] - vertices[a * 3 + 1], acZ = vertices[c * 3 + 2] - vertices[a * 3 + 2];
+        double x = abY * acZ - abZ * acY, y = abZ * acX - abX * acZ, z = abX * acY - abY * acX;
+        double length = Math.sqrt(x * x + y * y + z * z);
+        if (length == 0) {
+            return;
+        }
+        x /= length;
+        y /= length;
+        z /= length;
+        double d = -(x * vertices[a * 3] + y * vertices[a * 3 + 1] + z * vertices[a * 3 + 2]);
+        double area = length / 2;
+        double[] plane = {x * x * area, x * y * area, x * z * area, x * d * area, y * y * area, y * z * area, y * d * area,
+                z * z * area, z * d * area, d * d * area, area};
+        for (int v : new int[]{a, b, c}) {
+            for (int q = 0; q < QUADRIC_SIZE; q++) {
+                quadrics[v * QUADRIC_SIZE + q] += plane[q];
+            }
+        }
+    }
+
+    /**
+     * @return area weighted mean squared distance of {@code to} from the planes around both vertices
+     */
+    private static double collapseCost(double[] quadrics, float[] vertices, int from, int to) {
+        double x = vertices[to * 3], y = vertices[to * 3 + 1], z = vertices[to * 3 + 2];
+        double cost = 0, area = 0;
+        for (int v : new int[]{from, to}) {
+            int o = v * QUADRIC_SIZE;
+            cost += quadrics[o] * x * x + 2 * quadrics[o + 1] * x * y + 2 * quadrics[o + 2] * x * z + 2 * quadrics[o + 3] * x
+                    + quadrics[o + 4] * y * y + 2 * quadrics[o + 5] * y * z + 2 * quadrics[o + 6] * y
+                    + quadrics[o + 7] * z * z + 2 * quadrics[o + 8] * z + quadrics[o + 9];
+            area += quadrics[o + 10];
+        }
+        return area > 0 ? Math.max(0, cost / area) : 0;
+    }
+
+    /**
+     * @return true if moving {@code from} onto {@code to} turns any remaining triangle around {@code from} over
+     */
+    private static boolean flips(float[] vertices, int[] indices, int[] offsets, int[] triangles, int from, int to) {
+        for (int a = offsets[from]; a < offsets[from + 1]; a++) {
+            int triangle = triangles[a];
+            int v0 = indices[triangle], v1 = indices[triangle + 1], v2 = indices[triangle + 2];
+            if (v0 == to || v1 == to || v2 == to) {
+                continue; // collapses away
+            }
+            float[] before = normal(vertices, v0, v1, v2);
+            float[] after = normal(vertices, v0 == from ? to : v0, v1 == from ? to : v1, v2 == from ? to : v2);
+            if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static float[] normal(float[] vertices, int a, int b, int c) {
+        float abX = vertices[b * 3] - vertices[a * 3], abY = vertices[b * 3 + 1] - vertices[a * 3 + 1], abZ = vertices[b * 3 + 2] - vertices[a * 3 + 2];
+        float acX = vertices[c * 3] - vertices[a * 3], acY = vertices[c * 3 + 1] - vertices[a * 3 + 1], acZ = vertices[c * 3 + 2] - vertices[a * 3 + 2];
+        return new float[]{abY * acZ - abZ * acY, abZ * acX - abX * acZ, abX * acY - abY * acX};
+    }
+}
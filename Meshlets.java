@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import org.joml.Matrix4f;
+
+/**
+ * File: Meshlets.java
+ * Created on 19.10.2026, 12:18:55
+ *
+ * Splits a mesh into meshlets of at most {@link #MAX_VERTICES} vertices and {@link #MAX_TRIANGLES} triangles, each
+ * owning a contiguous range of the mesh vertices and triangles. Shared vertices are duplicated at meshlet borders,
+ * so a renderer can transform and set up only the meshlets that survive culling.
+ * <p>
+ * Every meshlet carries a bounding sphere for frustum culling and a cone bounding its face normals for backface
+ * culling. Both are in model space; the cone test assumes the model matrix does not scale non-uniformly.
+ *
+ * @author LWJGL2
+ */
+public class Meshlets {
+
+    public static final int MAX_VERTICES = 64;
+    public static final int MAX_TRIANGLES = 124;
+    // cones wider than this are not worth testing, stored as a cutoff no view direction can reach
+    private static final float MIN_CONE_DOT = 0.1f;
+    private static final float NO_CONE = 2;
+
+    public int count;
+    // first mesh vertex and first mesh triangle of every meshlet, with one extra entry marking the end
+    public int[] vertexOffsets, triangleOffsets;
+    // center x, y, z and radius per meshlet
+    public float[] spheres;
+    // unit axis x, y, z of the face normals and the sine of the cone half angle per meshlet
+    public float[] cones;
+
+    public Meshlets(int count, int[] vertexOffsets, int[] triangleOffsets, float[] spheres, float[] cones) {
+        this.count = count;
+        this.vertexOffsets = vertexOffsets;
+        this.triangleOffsets = triangleOffsets;
+        this.spheres = spheres;
+        this.cones = cones;
+    }
+
+    /**
+     * Greedily groups consecutive triangles, so meshes should already be in cache or cluster order,
+     * see {@link MeshOptimizer}. Rewrites the mesh arrays so every meshlet owns a contiguous vertex range.
+     */
+    public static Meshlets build(StaticMeshLoader.Mesh mesh) {
+        int[] indices = mesh.indices;
+        int triangleCount = indices.length / 3;
+        int vertexCount = mesh.vertices.length / 3;
+
+        // worst case every triangle brings three new vertices
+        int[] vertexOffsets = new int[triangleCount + 1];
+        int[] triangleOffsets = new int[triangleCount + 1];
+        int[] order = new int[indices.length];
+        int[] local = new int[vertexCount];
+        int[] stamp = new int[vertexCount];
+        int meshlet = 0, meshletVertices = 0, meshletTriangles = 0, orderedVertices = 0;
+        int[] vertexOrder = new int[indices.length];
+
+        for (int t = 0; t < triangleCount; t++) {
+            int fresh = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                if (stamp[v] != meshlet + 1) {
+                    fresh++;
+                }
+            }
+            if (meshletVertices + fresh > MAX_VERTICES || meshletTriangles == MAX_TRIANGLES) {
+                meshlet++;
+                vertexOffsets[meshlet] = orderedVertices;
+                triangleOffsets[meshlet] = t;
+                meshletVertices = 0;
+                meshletTriangles = 0;
+            }
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                if (stamp[v] != meshlet + 1) {
+                    stamp[v] = meshlet + 1;
+                    local[v] = orderedVertices++;
+                    vertexOrder[local[v]] = v;
+                    meshletVertices++;
+                }
+                order[t * 3 + k] = local[v];
+            }
+            meshletTriangles++;
+        }
+        int count = triangleCount == 0 ? 0 : meshlet + 1;
+        vertexOffsets[count] = orderedVertices;
+        triangleOffsets[count] = triangleCount;
+
+        float[] vertices = new float[orderedVertices * 3], textureCoords = new float[orderedVertices * 2], normals = new float[orderedVertices * 3];
+        for (int v = 0; v < orderedVertices; v++) {
+            System.arraycopy(mesh.vertices, vertexOrder[v] * 3, vertices, v * 3, 3);
+            System.arraycopy(mesh.textureCoords, vertexOrder[v] * 2, textureCoords, v * 2, 2);
+            System.arraycopy(mesh.normals, vertexOrder[v] * 3, normals, v * 3, 3);
+        }
+        mesh.vertices = vertices;
+        mesh.textureCoords = textureCoords;
+        mesh.normals = normals;
+        mesh.indices = order;
+
+        Meshlets meshlets = new Meshlets(count, Arrays.copyOf(vertexOffsets, count + 1), Arrays.copyOf(triangleOffsets, count + 1), new float[count * 4], new float[count * 4]);
+        for (int m = 0; m < count; m++) {
+            meshlets.calculateBounds(m, vertices, order);
+        }
+        return meshlets;
+    }
+
+    private void calculateBounds(int meshlet, float[] vertices, int[] indices) {
+        // sphere around the center of the bounding box
+        float[] box = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int v = vertexOffsets[meshlet]; v < vertexOffsets[meshlet + 1]; v++) {
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(box[axis], vertices[v * 3 + axis]);
+                box[axis + 3] = Math.max(box[axis + 3], vertices[v * 3 + axis]);
+            }
+        }
+        float centerX = (box[0] + box[3]) / 2, centerY = (box[1] + box[4]) / 2, centerZ = (box[2] + box[5]) / 2;
+        float radius = 0;
+        for (int v = vertexOffsets[meshlet]; v < vertexOffsets[meshlet + 1]; v++) {
+            float dx = vertices[v * 3] - centerX, dy = vertices[v * 3 + 1] - centerY, dz = vertices[v * 3 + 2] - centerZ;
+            radius = Math.max(radius, dx * dx + dy * dy + dz * dz);
+        }
+        spheres[meshlet * 4] = centerX;
+        spheres[meshlet * 4 + 1] = centerY;
+        spheres[meshlet * 4 + 2] = centerZ;
+        spheres[meshlet * 4 + 3] = (float) Math.sqrt(radius);
+
+        // front faces wind so that (p1 - p0) x (p2 - p0) points towards the viewer
+        float[] normals = new float[(triangleOffsets[meshlet + 1] - triangleOffsets[meshlet]) * 3];
+        float axisX = 0, axisY = 0, axisZ = 0;
+        int faces = 0;
+        for (int t = triangleOffsets[meshlet]; t < triangleOffsets[meshlet + 1]; t++) {
+            int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+            float abX = vertices[b] - vertices[a], abY = vertices[b + 1] - vertices[a + 1], abZ = vertices[b + 2] - vertices[a + 2];
+            float acX = vertices[c] - vertices[a], acY = vertices[c + 1] - vertices[a + 1], acZ = vertices[c + 2] - vertices[a + 2];
+            float x = abY * acZ - abZ * acY, y = abZ * acX - abX * acZ, z = abX * acY - abY * acX;
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            if (length == 0) {
+                // degenerate triangles are never drawn and do not widen the cone
+                continue;
+            }
+            normals[faces * 3] = x / length;
+            normals[faces * 3 + 1] = y / length;
+            normals[faces * 3 + 2] = z / length;
+            axisX += normals[faces * 3];
+            axisY += normals[faces * 3 + 1];
+            axisZ += normals[faces * 3 + 2];
+            faces++;
+        }
+        float axisLength = (float) Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+        float minDot = faces > 0 && axisLength > 0 ? 1 : -1;
+        for (int f = 0; f < faces && minDot > -1; f++) {
+            minDot = Math.min(minDot, (normals[f * 3] * axisX + normals[f * 3 + 1] * axisY + normals[f * 3 + 2] * axisZ) / axisLength);
+        }
+        cones[meshlet * 4] = axisLength > 0 ? axisX / axisLength : 0;
+        cones[meshlet * 4 + 1] = axisLength > 0 ? axisY / axisLength : 0;
+        cones[meshlet * 4 + 2] = axisLength > 0 ? axisZ / axisLength : 0;
+        cones[meshlet * 4 + 3] = minDot < MIN_CONE_DOT ? NO_CONE : (float) Math.sqrt(1 - minDot * minDot);
+    }
+
+    /**
+     * Extracts the planes |x| <= w, |y| <= w, near <= w <= far of {@code mvp} in model space, normalized,
+     * 4 floats each into {@code planes}.
+     */
+    public static void frustumPlanes(Matrix4f mvp, float near, float far, float[] planes) {
+        float[][] rows = {
+                {mvp.m00(), mvp.m10(), mvp.m20(), mvp.m30()},
+                {mvp.m01(), mvp.m11(), mvp.m21(), mvp.m31()},
+                {mvp.m03(), mvp.m13(), mvp.m23(), mvp.m33()}
+        };
+        float[] x = rows[0], y = rows[1], w = rows[2];
+        for (int i = 0; i < 4; i++) {
+            planes[i] = w[i] - x[i];
+            planes[4 + i] = w[i] + x[i];
+            planes[8 + i] = w[i] - y[i];
+            planes[12 + i] = w[i] + y[i];
+            planes[16 + i] = w[i];
+            planes[20 + i] = -w[i];
+        }
+        planes[19] -= near;
+        planes[23] += far;
+        for (int plane = 0; plane < 6; plane++) {
+            int o = plane * 4;
+            float length = (float) Math.sqrt(planes[o] * planes[o] + planes[o + 1] * planes[o + 1] + planes[o + 2] * planes[o + 2]);
+            for (int i = 0; i < 4; i++) {
+                planes[o + i] = length > 0 ? planes[o + i] / length : (i == 3 ? Float.MAX_VALUE : 0);
+            }
+        }
+    }
+
+    /**
+     * Writes the model space eye position of a perspective {@code mvp}, the point where clip x, y and w are all zero.
+     *
+     * @return false for projections without an eye point, which disables backface culling
+     */
+    public static boolean eye(Matrix4f mvp, float[] eye) {
+        // solve rows x, y and w of mvp times (eye, 1) = 0 with Cramer's rule
+        float a = mvp.m00(), b = mvp.m10(), c = mvp.m20(), d = -mvp.m30();
+        float e = mvp.m01(), f = mvp.m11(), g = mvp.m21(), h = -mvp.m31();
+        float i = mvp.m03(), j = mvp.m13(), k = mvp.m23(), l = -mvp.m33();
+        float determinant = a * (f * k - g * j) - b * (e * k - g * i) + c * (e * j - f * i);
+        if (Math.abs(determinant) < 1e-12f) {
+            return false;
+        }
+        eye[0] = (d * (f * k - g * j) - b * (h * k - g * l) + c * (h * j - f * l)) / determinant;
+        eye[1] = (a * (h * k - g * l) - d * (e * k - g * i) + c * (e * l - h * i)) / determinant;
+        eye[2] = (a * (f * l - h * j) - b * (e * l - h * i) + d * (e * j - f * i)) / determinant;
+        return true;
+    }
+
+    /**
+     * @param eye model space eye from {@link #eye}, or null to skip backface culling
+     * @return false if the meshlet lies completely outside the frustum or shows only back faces from the eye
+     */
+    public boolean isVisible(int meshlet, float[] planes, float[] eye) {
+        int s = meshlet * 4;
+        float centerX = spheres[s], centerY = spheres[s + 1], centerZ = spheres[s + 2], radius = spheres[s + 3];
+        for (int o = 0; o < 24; o += 4) {
+            if (planes[o] * centerX + planes[o + 1] * centerY + planes[o + 2] * centerZ + planes[o + 3] < -radius) {
+                return false;
+            }
+        }
+        float cutoff = cones[s + 3];
+        if (eye == null || cutoff >= 1) {
+            return true;
+        }
+        // every face normal n within the cone and every point p within the sphere have dot(n, p - eye) > 0
+        float dx = centerX - eye[0], dy = centerY - eye[1], dz = centerZ - eye[2];
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        return dx * cones[s] + dy * cones[s + 1] + dz * cones[s + 2] <= distance * cutoff + radius * (1 + cutoff);
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+import org.joml.Matrix4f;
+
+/**
+ * File: RenderQueue.java
+ * Created on 19.10.2026, 18:40:17
+ *
+ * Executes {@link CommandList}s on its own thread with a {@link TileRenderer}. The commands of all lists of a frame are
+ * merged and sorted by their keys, then replayed into the target buffer, so the application can record the next
+ * frame while the previous one is rasterized.
+ * <p>
+ * One frame is in flight at a time: {@link #submit} waits until the frame before is done, after which its lists and
+ * buffer belong to the caller again. Alternating between two sets of lists lets recording of frame N+1 overlap
+ * rasterization of frame N.
+ *
+ * <pre>
+ * queue.submit(buffer, lists[frame &amp; 1]); // returns once frame - 1 is done
+ * </pre>
+ *
+ * @author LWJGL2
+ */
+public class RenderQueue {
+
+    private static final int INDEX_MASK = (1 << CommandList.INDEX_BITS) - 1;
+
+    protected final TileRenderer renderer;
+    private final Thread thread;
+
+    // frame handed to the render thread, busy until it has been executed
+    private Buffer target;
+    private CommandList[] lists;
+    private boolean busy, running = true;
+    private RuntimeException failure;
+
+    // merged commands of the frame being executed, the low key bits index listIndices and commandIndices
+    private long[] keys = new long[256];
+    private int[] listIndices = new int[256], commandIndices = new int[256];
+    private final Matrix4f viewMatrix = new Matrix4f(), projectionMatrix = new Matrix4f(), modelMatrix = new Matrix4f();
+
+    public RenderQueue(TileRenderer renderer) {
+        this.renderer = renderer;
+        this.thread = new Thread(this::run, "Render queue");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Hands a frame to the render thread after waiting for the previous one. The lists must not be recorded into
+     * until this frame is done, see {@link #finish}.
+     */
+    public synchronized void submit(Buffer target, CommandList... lists) throws InterruptedException {
+        finish();
+        this.target = target;
+        this.lists = lists;
+        busy = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the last submitted frame is in its buffer.
+     *
+     * @throws RuntimeException the failure of the last frame, if executing it threw
+     */
+    public synchronized void finish() throws InterruptedException {
+        while (busy) {
+            wait();
+        }
+        if (failure != null) {
+            RuntimeException e = failure;
+            failure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the render thread once the last frame is done. The renderer stays usable.
+     */
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        thread.join();
+    }
+
+    private void run() {
+        while (true) {
+            Buffer frameTarget;
+            CommandList[] frameLists;
+            synchronized (this) {
+                while (!busy && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!busy) {
+                    return;
+                }
+                frameTarget = target;
+                frameLists = lists;
+            }
+            RuntimeException frameFailure = null;
+            try {
+                execute(frameTarget, frameLists);
+            } catch (RuntimeException e) {
+                frameFailure = e;
+            }
+            synchronized (this) {
+                failure = frameFailure;
+                target = null;
+                lists = null;
+                busy = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sorts and replays the commands of one frame. Runs on the render thread only.
+     */
+    protected void execute(Buffer target, CommandList[] lists) {
+        int total = 0;
+        for (CommandList list : lists) {
+            total += list.count;
+        }
+        if (total > INDEX_MASK + 1) {
+            throw new IllegalStateException("Too many commands in one frame: " + total);
+        }
+        if (keys.length < total) {
+            keys = new long[total];
+            listIndices = new int[total];
+            commandIndices = new int[total];
+        }
+        int n = 0;
+        for (int l = 0; l < lists.length; l++) {
+            CommandList list = lists[l];
+            for (int c = 0; c < list.count; c++, n++) {
+                keys[n] = list.keys[c] | n;
+                listIndices[n] = l;
+                commandIndices[n] = c;
+            }
+        }
+        Arrays.sort(keys, 0, n);
+
+        renderer.begin(target);
+        CommandList cameraList = null;
+        int cameraOffset = -1;
+        for (int i = 0; i < n; i++) {
+            int index = (int) (keys[i] & INDEX_MASK);
+            CommandList list = lists[listIndices[index]];
+            int c = commandIndices[index];
+            int type = list.types[c];
+            if (type == CommandList.CLEAR) {
+                renderer.clear(list.colors[c]);
+                continue;
+            }
+
+            if (list != cameraList || list.cameraOffsets[c] != cameraOffset) {
+                cameraList = list;
+                cameraOffset = list.cameraOffsets[c];
+                target.viewMatrix = viewMatrix.set(list.matrices, cameraOffset);
+                target.projectionMatrix = projectionMatrix.set(list.matrices, cameraOffset + 16);
+            }
+            if (type == CommandList.DRAW) {
+                target.modelMatrix = modelMatrix.set(list.matrices, list.matrixOffsets[c]);
+                renderer.draw(list.textures[c], list.meshes[c]);
+            } else {
+                renderer.drawInstanced(list.textures[c], list.meshes[c], list.instances[c], list.tints[c], list.instanceCounts[c]);
+            }
+        }
+        renderer.end();
+    }
+}
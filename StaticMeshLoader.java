@@ -34,11 +34,44 @@ public class StaticMeshLoader {
         }
     };
 
+    /**
+     * Runs {@link MeshOptimizer} over every imported mesh. Disable with -Dmeshloader.optimize=false.
+     */
+    public static boolean optimize = !"false".equals(System.getProperty("meshloader.optimize"));
+    /**
+     * Splits every imported mesh into {@link Meshlets}. Disable with -Dmeshloader.meshlets=false.
+     */
+    public static boolean meshlets = !"false".equals(System.getProperty("meshloader.meshlets"));
+    /**
+     * Builds a chain of coarser levels with {@link MeshSimplifier} for every imported mesh. Disable with -Dmeshloader.lods=false.
+     */
+    public static boolean lods = !"false".equals(System.getProperty("meshloader.lods"));
+
+    /**
+     * Loads through the {@link MeshCache}, importing with Assimp only if the source changed since it was cached.
+     */
     public static List<Mesh> load(File filePath) throws IOException {
+        return MeshCache.load(filePath);
+    }
+
+    public static List<Mesh> importFile(File filePath) throws IOException {
         List<Mesh> meshes = new ArrayList<>();
         AiScene scene = IHMCJassimp.importFile(filePath.getPath(), ASSIMP_POST);
         for (AiMesh mesh : scene.getMeshes()) {
-            meshes.add(loadData(mesh, null));
+            Mesh data = loadData(mesh, null);
+            if (optimize) {
+                System.err.println(filePath.getName() + " mesh " + meshes.size() + ": " + MeshOptimizer.optimize(data));
+            }
+            if (lods) {
+                data.lods = MeshSimplifier.buildLods(data);
+            }
+            if (meshlets) {
+                data.meshlets = Meshlets.build(data);
+                for (Mesh lod : data.lods) {
+                    lod.meshlets = Meshlets.build(lod);
+                }
+            }
+            meshes.add(data);
         }
         return meshes;
     }
@@ -74,7 +107,7 @@ public class StaticMeshLoader {
             indices[counter++] = mesh.getFaceVertex(f, 1);
             indices[counter++] = mesh.getFaceVertex(f, 2);
         }
-        return new Mesh(vertices, textureCoords, normals, indices, 0, material);
+        return new Mesh(vertices, textureCoords, normals, indices, Mesh.calculateFurthestPoint(vertices), material);
     }
 
     public static class Mesh {
@@ -86,6 +119,14 @@ public class StaticMeshLoader {
         protected float[] normals;
         protected int[] indices;
         protected float furthestPoint;
+        // minX, minY, minZ, maxX, maxY, maxZ
+        protected float[] bounds;
+        // null if the mesh was not split
+        protected Meshlets meshlets;
+        // coarser versions of this mesh, each with about half the triangles of the one before
+        protected Mesh[] lods = new Mesh[0];
+        // object space distance the surface may be off from the full mesh, 0 for the full mesh itself
+        protected float lodError;
 
         public Mesh(float[] vertices, float[] textureCoords, float[] normals, int[] indices, float furthestPoint, AiMaterial material) {
             this.vertices = vertices;
@@ -94,10 +135,20 @@ public class StaticMeshLoader {
             this.indices = indices;
             this.furthestPoint = furthestPoint;
             this.material = material;
+            this.bounds = calculateBounds(vertices);
         }
 
         public Mesh(float[] vertices, float[] textureCoords, float[] normals, int[] indices, float furthestPoint) {
-            this(vertices, textureCoords, normals, indices, furthestPoint, null);
+            this(vertices, textureCoords, normals, indices, furthestPoint, (AiMaterial) null);
+        }
+
+        public Mesh(float[] vertices, float[] textureCoords, float[] normals, int[] indices, float furthestPoint, float[] bounds) {
+            this.vertices = vertices;
+            this.textureCoords = textureCoords;
+            this.normals = normals;
+            this.indices = indices;
+            this.furthestPoint = furthestPoint;
+            this.bounds = bounds;
         }
 
         public float[] getVertices() {
@@ -123,5 +174,43 @@ public class StaticMeshLoader {
         public AiMaterial getMaterial() {
             return material;
         }
+
+        public float[] getBounds() {
+            return bounds;
+        }
+
+        public Meshlets getMeshlets() {
+            return meshlets;
+        }
+
+        public Mesh[] getLods() {
+            return lods;
+        }
+
+        public float getLodError() {
+            return lodError;
+        }
+
+        /**
+         * @return distance of the vertex furthest from the origin
+         */
+        public static float calculateFurthestPoint(float[] vertices) {
+            float furthest = 0;
+            for (int i = 0; i < vertices.length; i += 3) {
+                furthest = Math.max(furthest, vertices[i] * vertices[i] + vertices[i + 1] * vertices[i + 1] + vertices[i + 2] * vertices[i + 2]);
+            }
+            return (float) Math.sqrt(furthest);
+        }
+
+        private static float[] calculateBounds(float[] vertices) {
+            float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for (int i = 0; i < vertices.length; i += 3) {
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], vertices[i + axis]);
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], vertices[i + axis]);
+                }
+            }
+            return bounds;
+        }
     }
 }
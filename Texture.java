@@ -9,8 +9,44 @@ import java.awt.image.DataBufferInt;
  */
 public class Texture {
 
+    /**
+     * NEAREST and BILINEAR pick the nearest mip level, TRILINEAR blends the two nearest ones.
+     */
+    public enum Filter {
+        NEAREST, BILINEAR, TRILINEAR
+    }
+
+    public enum Wrap {
+        REPEAT, CLAMP
+    }
+
+    /**
+     * Texels of every mip level are stored in BLOCK x BLOCK tiles of one cache line each, so neighbouring
+     * screen pixels mostly read texels from the same line instead of jumping across rows.
+     */
+    public static final int BLOCK_BITS = 2;
+    public static final int BLOCK = 1 << BLOCK_BITS;
+    private static final int BLOCK_MASK = BLOCK - 1;
+
     public int[] pixelData;
     public final int width, height;
+    /**
+     * No texel has a zero alpha, so the rasterizer never discards a fragment of this texture.
+     */
+    public final boolean opaque;
+
+    public Filter filter = Filter.NEAREST;
+    public Wrap wrap = Wrap.REPEAT;
+
+    /**
+     * Swizzled texels of all mip levels, level 0 first.
+     */
+    public final int[] texels;
+    public final int levelCount;
+    // every level of a power of two texture is one as well, repeat addressing is a mask then
+    protected final boolean powerOfTwo;
+    protected final int[] levelWidth, levelHeight, levelBlocksX, levelOffset;
+    protected final float[] levelScaleX, levelScaleY;
 
     public Texture(BufferedImage base) {
         BufferedImage image = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_ARGB);
@@ -21,6 +57,181 @@ public class Texture {
         width = image.getWidth();
         height = image.getHeight();
         pixelData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        boolean opaque = true;
+        for (int pixel : pixelData) {
+            if (pixel >> 24 == 0) {
+                opaque = false;
+                break;
+            }
+        }
+        this.opaque = opaque;
+
+        powerOfTwo = (width & (width - 1)) == 0 && (height & (height - 1)) == 0;
+        int levels = 1;
+        while ((width >> levels) > 0 || (height >> levels) > 0) {
+            levels++;
+        }
+        levelCount = levels;
+        levelWidth = new int[levels];
+        levelHeight = new int[levels];
+        levelBlocksX = new int[levels];
+        levelOffset = new int[levels];
+        levelScaleX = new float[levels];
+        levelScaleY = new float[levels];
+
+        int size = 0;
+        for (int level = 0; level < levels; level++) {
+            levelWidth[level] = Math.max(1, width >> level);
+            levelHeight[level] = Math.max(1, height >> level);
+            levelBlocksX[level] = (levelWidth[level] + BLOCK_MASK) >> BLOCK_BITS;
+            levelScaleX[level] = (float) levelWidth[level] / width;
+            levelScaleY[level] = (float) levelHeight[level] / height;
+            levelOffset[level] = size;
+            size += levelBlocksX[level] * ((levelHeight[level] + BLOCK_MASK) >> BLOCK_BITS) * BLOCK * BLOCK;
+        }
+        texels = new int[size];
+
+        int[] level = pixelData;
+        for (int l = 0; l < levels; l++) {
+            if (l > 0) {
+                level = downsample(level, levelWidth[l - 1], levelHeight[l - 1], levelWidth[l], levelHeight[l]);
+            }
+            for (int y = 0; y < levelHeight[l]; y++) {
+                for (int x = 0; x < levelWidth[l]; x++) {
+                    texels[index(l, x, y)] = level[x + y * levelWidth[l]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Box filters a row-major level into the next smaller one. Odd sizes repeat their last row or column.
+     */
+    private static int[] downsample(int[] source, int sourceWidth, int sourceHeight, int width, int height) {
+        int[] result = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int y0 = Math.min(y * 2, sourceHeight - 1) * sourceWidth;
+            int y1 = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.min(x * 2, sourceWidth - 1);
+                int x1 = Math.min(x * 2 + 1, sourceWidth - 1);
+                result[x + y * width] = average(source[x0 + y0], source[x1 + y0], source[x0 + y1], source[x1 + y1]);
+            }
+        }
+        return result;
+    }
+
+    private static int average(int a, int b, int c, int d) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int sum = ((a >>> shift) & 0xff) + ((b >>> shift) & 0xff) + ((c >>> shift) & 0xff) + ((d >>> shift) & 0xff);
+            result |= ((sum + 2) >> 2) << shift;
+        }
+        return result;
+    }
+
+    private int index(int level, int x, int y) {
+        return levelOffset[level] + (((y >> BLOCK_BITS) * levelBlocksX[level] + (x >> BLOCK_BITS)) << (BLOCK_BITS * 2))
+                + ((y & BLOCK_MASK) << BLOCK_BITS) + (x & BLOCK_MASK);
+    }
+
+    private int address(int coordinate, int size) {
+        if (wrap == Wrap.CLAMP) {
+            return coordinate < 0 ? 0 : (coordinate >= size ? size - 1 : coordinate);
+        }
+        if (powerOfTwo) {
+            return coordinate & (size - 1);
+        }
+        coordinate %= size;
+        return coordinate < 0 ? coordinate + size : coordinate;
+    }
+
+    /**
+     * @return level of detail for a footprint of rho2 squared texels (of level 0) per pixel: 0.5 * log2(rho2),
+     * with the logarithm approximated linearly between powers of two
+     */
+    public static float lod(float rho2) {
+        int bits = Float.floatToRawIntBits(rho2);
+        return (((bits >> 23) & 0xff) - 127 + (bits & 0x7fffff) * (1.0f / (1 << 23))) * 0.5f;
+    }
+
+    /**
+     * Samples the texture with its {@link #filter} and {@link #wrap} modes.
+     *
+     * @param x   texture u in texels of level 0
+     * @param y   texture v in texels of level 0
+     * @param lod level of detail, see {@link #lod(float)}
+     */
+    public int sample(float x, float y, float lod) {
+        int level = level(lod);
+        if (filter == Filter.NEAREST) {
+            return nearest(level, x * levelScaleX[level], y * levelScaleY[level]);
+        }
+        int color = bilinear(level, x * levelScaleX[level], y * levelScaleY[level]);
+        if (filter == Filter.TRILINEAR && lod > 0 && level + 1 < levelCount) {
+            int next = bilinear(level + 1, x * levelScaleX[level + 1], y * levelScaleY[level + 1]);
+            int weight = (int) ((lod - level) * 256);
+            color = blend(color, next, 256 - weight, weight);
+        }
+        return color;
+    }
+
+    /**
+     * @return the mip level {@link #sample} reads first for {@code lod}
+     */
+    public int level(float lod) {
+        return lod <= 0 ? 0 : Math.min(levelCount - 1, (int) (filter == Filter.TRILINEAR ? lod : lod + 0.5f));
+    }
+
+    private int nearest(int level, float x, float y) {
+        int ix = (int) x;
+        int iy = (int) y;
+        if (x < ix) {
+            ix--;
+        }
+        if (y < iy) {
+            iy--;
+        }
+        return texels[index(level, address(ix, levelWidth[level]), address(iy, levelHeight[level]))];
+    }
+
+    private int bilinear(int level, float x, float y) {
+        x -= 0.5f;
+        y -= 0.5f;
+        int ix = (int) x;
+        int iy = (int) y;
+        if (x < ix) {
+            ix--;
+        }
+        if (y < iy) {
+            iy--;
+        }
+        int fx = (int) ((x - ix) * 256);
+        int fy = (int) ((y - iy) * 256);
+
+        int w = levelWidth[level], h = levelHeight[level];
+        int x0 = address(ix, w), x1 = address(ix + 1, w);
+        int y0 = address(iy, h), y1 = address(iy + 1, h);
+        int c00 = texels[index(level, x0, y0)];
+        int c10 = texels[index(level, x1, y0)];
+        int c01 = texels[index(level, x0, y1)];
+        int c11 = texels[index(level, x1, y1)];
+
+        // weights sum up to exactly 256, so two 8 bit channels can be blended at once without overflow
+        int w11 = (fx * fy) >> 8;
+        int w10 = fx - w11;
+        int w01 = fy - w11;
+        int w00 = 256 - fx - fy + w11;
+        int redBlue = (c00 & 0xff00ff) * w00 + (c10 & 0xff00ff) * w10 + (c01 & 0xff00ff) * w01 + (c11 & 0xff00ff) * w11;
+        int alphaGreen = ((c00 >>> 8) & 0xff00ff) * w00 + ((c10 >>> 8) & 0xff00ff) * w10 + ((c01 >>> 8) & 0xff00ff) * w01 + ((c11 >>> 8) & 0xff00ff) * w11;
+        return ((redBlue >>> 8) & 0xff00ff) | (alphaGreen & 0xff00ff00);
+    }
+
+    private static int blend(int a, int b, int weightA, int weightB) {
+        int redBlue = (a & 0xff00ff) * weightA + (b & 0xff00ff) * weightB;
+        int alphaGreen = ((a >>> 8) & 0xff00ff) * weightA + ((b >>> 8) & 0xff00ff) * weightB;
+        return ((redBlue >>> 8) & 0xff00ff) | (alphaGreen & 0xff00ff00);
     }
 
     public int getPixel(float x, float y) {
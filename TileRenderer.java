@@ -0,0 +1,894 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import org.joml.Matrix4f;
+
+/**
+ * File: TileRenderer.java
+ * Created on 18.10.2026, 10:12:41
+ *
+ * Sort-middle parallel rasterizer. Submitted vertices are transformed once, triangles are clipped and binned into screen tiles,
+ * then every tile is rasterized by exactly one worker, walking its triangles in submission order.
+ * No two workers ever touch the same pixel, so the frame is race-free and identical between runs.
+ *
+ * @author LWJGL2
+ */
+public class TileRenderer {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    protected final ForkJoinPool pool;
+    protected final int tileSize;
+    protected final int chunkCount;
+
+    protected Buffer buffer;
+    protected int tilesX, tilesY;
+
+    // pooled, only the first drawCount entries belong to the batch being recorded
+    protected final List<Draw> draws = new ArrayList<>();
+    protected int drawCount;
+    protected int triangleCount, vertexCount;
+    protected boolean flushed;
+    // set by clear(), every tile clears itself during the next flush before rasterizing
+    protected boolean clearPending;
+    protected int clearColor;
+    // whether the pending clear still has to write depth, integer depth formats clear it by an epoch instead
+    protected boolean clearDepth;
+
+    private final Matrix4f mvp = new Matrix4f();
+    // model matrix of the draw being queued, lit draws take their world space normals and positions from it
+    private Matrix4f model;
+    // whether the batch being recorded holds lit draws, whose tiles are shaded after rasterizing
+    protected boolean lit;
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final float[] screenBounds = new float[5];
+    private final float[] sphere = new float[4];
+    private final float[] frustumPlanes = new float[24];
+    private final float[] eye = new float[3];
+
+    /**
+     * Meshlets rejected by frustum or cone culling since {@link #begin}.
+     */
+    public int culledMeshlets;
+    /**
+     * Meshes and instances rejected as a whole because their bounds lie outside the frustum, since {@link #begin}.
+     */
+    public int culledMeshes;
+    /**
+     * Largest screen space error in pixels a LOD may show, see {@link #selectLod}. 0 always draws the full mesh.
+     */
+    public float lodThreshold = 1;
+    /**
+     * Redraws only the tiles where a frame differs from what its buffer already holds, see {@link #end}.
+     */
+    public boolean incremental;
+
+    protected Chunk[] chunks;
+
+    // incremental rendering: what every buffer holds, the frame rendered last, and unused records
+    protected final Map<Buffer, Contents> contents = new IdentityHashMap<>();
+    protected Contents lastFrame;
+    private final List<Contents> spareContents = new ArrayList<>();
+    // tiles the current flush rasterizes when it is partial
+    protected boolean partial;
+    protected boolean[] dirtyTiles = new boolean[0];
+    protected int[] dirtyTileList = new int[0];
+    protected int dirtyTileCount;
+    // what differs from the frame presented last, and from what the buffer holds, which is what has to be redrawn
+    private final int[] changed = new int[4], changedTiles = new int[4];
+    // inclusive rectangle set by setRegion, empty when minX > maxX
+    protected int regionMinX, regionMinY, regionMaxX = -1, regionMaxY = -1;
+
+    public TileRenderer(int threadCount) {
+        this(threadCount, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * @param tileSize a multiple of {@link Buffer#BLOCK_SIZE}, so no Hi-Z block or 8 pixel vector store is shared by
+     *                 two tiles that different workers rasterize
+     */
+    public TileRenderer(int threadCount, int tileSize) {
+        if (tileSize <= 0 || tileSize % Buffer.BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Expected a positive multiple of " + Buffer.BLOCK_SIZE + " as tile size, got " + tileSize);
+        }
+        this.pool = new ForkJoinPool(threadCount);
+        this.tileSize = tileSize;
+        this.chunkCount = threadCount * 4;
+        this.chunks = new Chunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = new Chunk();
+        }
+    }
+
+    public void begin(Buffer buffer) {
+        this.buffer = buffer;
+        drawCount = 0;
+        triangleCount = 0;
+        vertexCount = 0;
+        flushed = false;
+        culledMeshlets = 0;
+        culledMeshes = 0;
+        clearPending = false;
+        lit = false;
+        regionMinX = 0;
+        regionMaxX = -1;
+        buffer.setDirty(0, 0, buffer.width - 1, buffer.height - 1);
+    }
+
+    /**
+     * Limits the flushes until the next {@link #begin} to the tiles overlapping the inclusive rectangle, pixels of
+     * other tiles are left as they are. Rectangles on tile boundaries get exactly the pixels the whole frame would
+     * have there, so processes rendering regions of one frame can put it together without seams, see BatchRender.
+     */
+    public void setRegion(int minX, int minY, int maxX, int maxY) {
+        regionMinX = minX;
+        regionMinY = minY;
+        regionMaxX = maxX;
+        regionMaxY = maxY;
+    }
+
+    /**
+     * Clears the buffer like {@link Buffer#clear(Color)}, but lazily: every tile clears its own pixels, depth and Hi-Z
+     * in the next flush right before rasterizing into them, in parallel and while they are in cache.
+     * Integer depth formats skip the depth pass, see {@link Buffer#nextDepthEpoch}.
+     * Draws queued before are flushed first.
+     */
+    public void clear(Color color) {
+        if (drawCount > 0) {
+            flush();
+        }
+        // a pending clear that still has to write depth keeps doing so, the epoch it reset to is not clean
+        boolean epochCleared = buffer.nextDepthEpoch();
+        clearDepth = !epochCleared || (clearPending && clearDepth);
+        clearPending = true;
+        clearColor = color.getRGB();
+        buffer.culledTriangles.reset();
+        // every pixel is cleared before anything is rasterized into it again
+        buffer.releaseSamples();
+    }
+
+    /**
+     * Queues a mesh with the model, view and projection matrices currently set on the buffer.
+     * Meshes with LODs queue the coarsest level that {@link #selectLod} allows.
+     * Meshes split into {@link Meshlets} only queue the meshlets inside the frustum that face the camera.
+     */
+    public void draw(Texture texture, StaticMeshLoader.Mesh mesh) {
+        mvp.set(buffer.projectionMatrix).mul(buffer.viewMatrix).mul(buffer.modelMatrix);
+        model = buffer.modelMatrix;
+        submit(texture, mesh, Buffer.NO_TINT);
+    }
+
+    /**
+     * Queues {@code count} instances of a mesh, using {@code instances[i]} as the model matrix of instance i
+     * instead of the buffer's. The instances share the mesh arrays and are transformed, binned and rasterized
+     * together by the workers, so thousands of them cost little more than one mesh with as many triangles.
+     * Every instance is culled, picks its LOD and culls its meshlets on its own.
+     *
+     * @param tints 0xRRGGBB color multiplied into the texture per instance, or null to draw them untinted
+     */
+    public void drawInstanced(Texture texture, StaticMeshLoader.Mesh mesh, Matrix4f[] instances, int[] tints, int count) {
+        viewProjection.set(buffer.projectionMatrix).mul(buffer.viewMatrix);
+        for (int i = 0; i < count; i++) {
+            mvp.set(viewProjection).mul(instances[i]);
+            model = instances[i];
+            submit(texture, mesh, tints == null ? Buffer.NO_TINT : tints[i]);
+        }
+    }
+
+    /**
+     * Queues a mesh with the current {@link #mvp}.
+     */
+    protected void submit(Texture texture, StaticMeshLoader.Mesh mesh, int tint) {
+        boundingSphere(mesh.bounds, sphere);
+        Meshlets.frustumPlanes(mvp, buffer.clipNear, buffer.clipFar, frustumPlanes);
+        for (int o = 0; o < 24; o += 4) {
+            if (frustumPlanes[o] * sphere[0] + frustumPlanes[o + 1] * sphere[1] + frustumPlanes[o + 2] * sphere[2] + frustumPlanes[o + 3] < -sphere[3]) {
+                culledMeshes++;
+                FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_SUBMITTED, mesh.indices.length / 3);
+                FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_CULLED, mesh.indices.length / 3);
+                return;
+            }
+        }
+        int lod = selectLod(mesh);
+        if (lod > 0) {
+            mesh = mesh.lods[lod - 1];
+        }
+
+        boolean hasScreenBounds = buffer.projectBounds(mvp, mesh.bounds, screenBounds);
+        if (hasScreenBounds && flushed && !clearPending && buffer.isOccluded((int) screenBounds[0], (int) screenBounds[1], (int) screenBounds[2], (int) screenBounds[3], screenBounds[4])) {
+            // hidden behind what earlier flushes drew, skip it before any vertex work
+            buffer.culledTriangles.add(mesh.indices.length / 3);
+            FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_SUBMITTED, mesh.indices.length / 3);
+            FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_CULLED, mesh.indices.length / 3);
+            return;
+        }
+        Meshlets meshlets = mesh.meshlets;
+        Draw draw;
+        if (meshlets == null) {
+            draw = queue(texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords);
+        } else {
+            draw = begin(texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords);
+            boolean hasEye = Meshlets.eye(mvp, eye);
+            for (int m = 0; m < meshlets.count; m++) {
+                if (meshlets.isVisible(m, frustumPlanes, hasEye ? eye : null)) {
+                    draw.addRange(meshlets.vertexOffsets[m], meshlets.vertexOffsets[m + 1], meshlets.triangleOffsets[m], meshlets.triangleOffsets[m + 1]);
+                } else {
+                    culledMeshlets++;
+                    int triangles = meshlets.triangleOffsets[m + 1] - meshlets.triangleOffsets[m];
+                    FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_SUBMITTED, triangles);
+                    FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_CULLED, triangles);
+                }
+            }
+            end(draw);
+        }
+        draw.tint = tint;
+        draw.hasScreenBounds = hasScreenBounds;
+        System.arraycopy(screenBounds, 0, draw.screenBounds, 0, screenBounds.length);
+    }
+
+    /**
+     * Projects the LOD errors with the current MVP at the point of the bounding sphere nearest to the camera.
+     *
+     * @return 0 for the full mesh or n for {@code mesh.lods[n - 1]}
+     */
+    protected int selectLod(StaticMeshLoader.Mesh mesh) {
+        if (mesh.lods.length == 0 || lodThreshold <= 0) {
+            return 0;
+        }
+        boundingSphere(mesh.bounds, sphere);
+
+        // clip w grows by at most |w row| per model unit, so this is the nearest w any vertex can have
+        float nearestW = mvp.m03() * sphere[0] + mvp.m13() * sphere[1] + mvp.m23() * sphere[2] + mvp.m33()
+                - length(mvp.m03(), mvp.m13(), mvp.m23()) * sphere[3];
+        if (nearestW <= buffer.clipNear) {
+            return 0;
+        }
+        // pixels per model unit at that depth, along the axis that stretches most
+        float pixelsPerUnit = Math.max(buffer.width / 2.0f * length(mvp.m00(), mvp.m10(), mvp.m20()),
+                buffer.height / 2.0f * length(mvp.m01(), mvp.m11(), mvp.m21())) / nearestW;
+        int lod = 0;
+        while (lod < mesh.lods.length && mesh.lods[lod].lodError * pixelsPerUnit <= lodThreshold) {
+            lod++;
+        }
+        return lod;
+    }
+
+    /**
+     * Writes center x, y, z and radius of the sphere around the box {@code bounds}.
+     */
+    private static void boundingSphere(float[] bounds, float[] sphere) {
+        float extentX = (bounds[3] - bounds[0]) / 2, extentY = (bounds[4] - bounds[1]) / 2, extentZ = (bounds[5] - bounds[2]) / 2;
+        sphere[0] = bounds[0] + extentX;
+        sphere[1] = bounds[1] + extentY;
+        sphere[2] = bounds[2] + extentZ;
+        sphere[3] = length(extentX, extentY, extentZ);
+    }
+
+    private static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    public void draw(Texture texture, float[] vertices, int[] indices, float[] normals, float[] textureCoords) {
+        mvp.set(buffer.projectionMatrix).mul(buffer.viewMatrix).mul(buffer.modelMatrix);
+        model = buffer.modelMatrix;
+        queue(texture, vertices, indices, normals, textureCoords);
+    }
+
+    protected Draw queue(Texture texture, float[] vertices, int[] indices, float[] normals, float[] textureCoords) {
+        Draw draw = begin(texture, vertices, indices, normals, textureCoords);
+        draw.addRange(0, vertices.length / 3, 0, indices.length / 3);
+        end(draw);
+        return draw;
+    }
+
+    /**
+     * Takes a pooled draw for the current MVP, ranges are added before {@link #end(Draw)}.
+     * Draws with normals are lit while the buffer has {@link Buffer#lighting}.
+     */
+    protected Draw begin(Texture texture, float[] vertices, int[] indices, float[] normals, float[] textureCoords) {
+        if (drawCount == draws.size()) {
+            draws.add(new Draw());
+        }
+        Draw draw = draws.get(drawCount++);
+        draw.texture = texture;
+        draw.vertices = vertices;
+        draw.indices = indices;
+        draw.textureCoords = textureCoords;
+        draw.mvp.set(mvp);
+        draw.lit = buffer.lighting != null && normals != null;
+        draw.stage.setLighting(draw.lit ? buffer.lighting : null, model, normals);
+        lit |= draw.lit;
+        draw.hasScreenBounds = false;
+        draw.firstTriangle = triangleCount;
+        draw.firstVertex = vertexCount;
+        draw.vertexCount = 0;
+        draw.triangleCount = 0;
+        draw.rangeCount = 0;
+        draw.tint = Buffer.NO_TINT;
+        // the stage is indexed by mesh vertex, entries outside the ranges are never read
+        draw.stage.prepare(vertices.length / 3);
+        return draw;
+    }
+
+    protected void end(Draw draw) {
+        FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_SUBMITTED, draw.triangleCount);
+        triangleCount += draw.triangleCount;
+        vertexCount += draw.vertexCount;
+    }
+
+    /**
+     * Transforms, bins and rasterizes everything queued so far and blocks until it is in the buffer.
+     * Meshes drawn after a flush are tested against the Hi-Z it left behind before they are even transformed,
+     * so flushing after the big occluders lets whole meshes behind them be skipped.
+     */
+    public void flush() {
+        tilesX = (buffer.width + tileSize - 1) / tileSize;
+        tilesY = (buffer.height + tileSize - 1) / tileSize;
+        int tileCount = tilesX * tilesY;
+
+        if (!partial && regionMinX <= regionMaxX) {
+            resetDirtyTiles(tileCount);
+            markTiles(Math.max(0, regionMinX), Math.max(0, regionMinY), Math.min(buffer.width - 1, regionMaxX), Math.min(buffer.height - 1, regionMaxY));
+            listDirtyTiles(tileCount);
+            partial = true;
+        }
+        if (partial) {
+            tileCount = dirtyTileCount;
+        }
+        if (drawCount > 0) {
+            if (lit) {
+                buffer.prepareLighting();
+            }
+            pool.invoke(new ParallelFor(0, chunkCount, this::transformChunk));
+            pool.invoke(new ParallelFor(0, chunkCount, this::setupChunk));
+            pool.invoke(new ParallelFor(0, tileCount, partial ? tile -> rasterizeTile(dirtyTileList[tile]) : this::rasterizeTile));
+            flushed = true;
+        } else if (clearPending) {
+            pool.invoke(new ParallelFor(0, tileCount, partial ? tile -> clearTile(dirtyTileList[tile]) : this::clearTile));
+        }
+        clearPending = false;
+        partial = false;
+        for (int i = 0; i < drawCount; i++) {
+            draws.get(i).release();
+        }
+        drawCount = 0;
+        triangleCount = 0;
+        vertexCount = 0;
+        lit = false;
+    }
+
+    /**
+     * Flushes the rest of the frame. Blocks until the frame is done.
+     * <p>
+     * With {@link #incremental} set, a frame that starts with {@link #clear} and is drawn in one batch is compared
+     * draw by draw, by mesh arrays, texture, tint and MVP, with the frame last rendered into the same buffer. Only the
+     * tiles under the old and new screen bounds of the draws that changed are cleared and rasterized, and only the
+     * draws reaching into them are transformed. The buffer's {@link Buffer#setDirty dirty rectangle} is set to where
+     * the frame differs from the one before it, which is all {@link Buffer#draw} presents. Anything else that changes
+     * the picture, like the lights, texels or vertices edited in place or drawing into the buffer directly, needs an
+     * {@link #invalidate}.
+     *
+     * @return false if the frame is the same as the one before, so nothing needs to be presented
+     */
+    public boolean end() {
+        if (!incremental || flushed || !clearPending || clearDepth && buffer.getDepthFormat().bits != 0 || regionMinX <= regionMaxX) {
+            // flushed in several batches, not cleared, limited to a region or a depth clear that would miss the
+            // tiles left alone: only a complete redraw leaves the buffer in a known state. The depth buffer of an
+            // integer format has to be cleared as a whole once its epochs wrap around.
+            flush();
+            Contents previousFrame = lastFrame;
+            lastFrame = null;
+            forget(contents.remove(buffer));
+            forget(previousFrame);
+            return true;
+        }
+        tilesX = (buffer.width + tileSize - 1) / tileSize;
+        tilesY = (buffer.height + tileSize - 1) / tileSize;
+        int tileCount = tilesX * tilesY;
+        Contents frame = spareContents.isEmpty() ? new Contents() : spareContents.remove(spareContents.size() - 1);
+        frame.record(this);
+
+        resetDirtyTiles(tileCount);
+        boolean presented = frame.compare(lastFrame, null, changed);
+        frame.compare(contents.get(buffer), this, changedTiles);
+        if (presented) {
+            buffer.setDirty(changed[0], changed[1], changed[2], changed[3]);
+        } else {
+            buffer.setDirty(0, 0, -1, -1);
+        }
+
+        listDirtyTiles(tileCount);
+        if (dirtyTileCount > 0) {
+            // draws that do not reach into a dirty tile are dropped before their vertices are transformed
+            vertexCount = 0;
+            triangleCount = 0;
+            for (int i = 0; i < drawCount; i++) {
+                Draw draw = draws.get(i);
+                if (!frame.touches(i, this)) {
+                    draw.rangeCount = 0;
+                    draw.vertexCount = 0;
+                    draw.triangleCount = 0;
+                }
+                draw.firstVertex = vertexCount;
+                draw.firstTriangle = triangleCount;
+                vertexCount += draw.vertexCount;
+                triangleCount += draw.triangleCount;
+            }
+            partial = dirtyTileCount < tileCount;
+            flush();
+        } else {
+            // nothing to draw, the clear is dropped with the draws
+            for (int i = 0; i < drawCount; i++) {
+                draws.get(i).release();
+            }
+            drawCount = 0;
+            triangleCount = 0;
+            vertexCount = 0;
+            lit = false;
+            clearPending = false;
+        }
+        Contents previous = contents.put(buffer, frame);
+        Contents previousFrame = lastFrame;
+        lastFrame = frame;
+        forget(previous);
+        forget(previousFrame);
+        return presented;
+    }
+
+    /**
+     * Makes the next incremental frame of every buffer a complete redraw and present.
+     */
+    public void invalidate() {
+        contents.clear();
+        lastFrame = null;
+        spareContents.clear();
+    }
+
+    private void forget(Contents frame) {
+        if (frame != null && frame != lastFrame && !contents.containsValue(frame) && !spareContents.contains(frame)) {
+            spareContents.add(frame);
+        }
+    }
+
+    private void resetDirtyTiles(int tileCount) {
+        if (dirtyTiles.length < tileCount) {
+            dirtyTiles = new boolean[tileCount];
+            dirtyTileList = new int[tileCount];
+        }
+        Arrays.fill(dirtyTiles, 0, tileCount, false);
+    }
+
+    private void listDirtyTiles(int tileCount) {
+        dirtyTileCount = 0;
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (dirtyTiles[tile]) {
+                dirtyTileList[dirtyTileCount++] = tile;
+            }
+        }
+    }
+
+    protected void markTiles(int minX, int minY, int maxX, int maxY) {
+        for (int tileY = minY / tileSize; tileY <= maxY / tileSize; tileY++) {
+            for (int tileX = minX / tileSize; tileX <= maxX / tileSize; tileX++) {
+                dirtyTiles[tileY * tilesX + tileX] = true;
+            }
+        }
+    }
+
+    /**
+     * Transforms one contiguous range of all queued vertices, each unique vertex exactly once.
+     */
+    protected void transformChunk(int index) {
+        long start = FrameProfiler.start();
+        int first = (int) ((long) vertexCount * index / chunkCount);
+        int last = (int) ((long) vertexCount * (index + 1) / chunkCount);
+        int v = first;
+        for (int drawIndex = 0; drawIndex < drawCount && v < last; drawIndex++) {
+            Draw draw = draws.get(drawIndex);
+            int rangeStart = draw.firstVertex;
+            for (int range = 0; range < draw.rangeCount && v < last; range++) {
+                int from = draw.ranges[range * 4], to = draw.ranges[range * 4 + 1];
+                int rangeEnd = rangeStart + to - from;
+                if (v < rangeEnd) {
+                    int end = Math.min(last, rangeEnd);
+                    draw.stage.transform(draw.mvp, draw.vertices, draw.textureCoords, from + v - rangeStart, from + end - rangeStart, buffer.width, buffer.height, buffer.clipNear, buffer.clipFar);
+                    v = end;
+                }
+                rangeStart = rangeEnd;
+            }
+        }
+        FrameProfiler.stage(FrameProfiler.Stage.VERTEX, start);
+    }
+
+    protected void setupChunk(int index) {
+        long start = FrameProfiler.start();
+        int rasterized = 0, culled = 0;
+        Chunk chunk = chunks[index];
+        int tileCount = tilesX * tilesY;
+        int first = (int) ((long) triangleCount * index / chunkCount);
+        int last = (int) ((long) triangleCount * (index + 1) / chunkCount);
+        chunk.reset(tileCount, last - first);
+
+        int t = first;
+        for (int drawIndex = 0; drawIndex < drawCount && t < last; drawIndex++) {
+            Draw draw = draws.get(drawIndex);
+            int rangeStart = draw.firstTriangle;
+            for (int range = 0; range < draw.rangeCount && t < last; range++) {
+                int from = draw.ranges[range * 4 + 2], to = draw.ranges[range * 4 + 3];
+                int rangeEnd = rangeStart + to - from;
+                for (; t < rangeEnd && t < last; t++) {
+                    chunk.ensureCapacity(Clipper.MAX_TRIANGLES);
+                    int written = buffer.setupTriangle(draw.stage, draw.indices, (from + t - rangeStart) * 3, chunk.clipper, chunk.triangles, chunk.triangleCount * Buffer.TRIANGLE_STRIDE);
+                    for (int i = 0; i < written; i++) {
+                        chunk.triangleDraw[chunk.triangleCount] = drawIndex;
+                        bin(chunk, chunk.triangleCount++);
+                    }
+                    if (written > 0) {
+                        rasterized++;
+                    } else {
+                        culled++;
+                    }
+                }
+                rangeStart = rangeEnd;
+            }
+        }
+        FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_RASTERIZED, rasterized);
+        FrameProfiler.count(FrameProfiler.Counter.TRIANGLES_CULLED, culled);
+        FrameProfiler.stage(FrameProfiler.Stage.SETUP, start);
+    }
+
+    protected void bin(Chunk chunk, int triangle) {
+        float[] triangles = chunk.triangles;
+        int offset = triangle * Buffer.TRIANGLE_STRIDE;
+        int offset1 = offset + Buffer.TRIANGLE_VERTEX;
+        int offset2 = offset + Buffer.TRIANGLE_VERTEX * 2;
+        float minX = Math.min(triangles[offset], Math.min(triangles[offset1], triangles[offset2]));
+        float maxX = Math.max(triangles[offset], Math.max(triangles[offset1], triangles[offset2]));
+        float minY = Math.min(triangles[offset + 1], Math.min(triangles[offset1 + 1], triangles[offset2 + 1]));
+        float maxY = Math.max(triangles[offset + 1], Math.max(triangles[offset1 + 1], triangles[offset2 + 1]));
+        // negated form also rejects NaN coordinates
+        if (!(maxX >= 0 && maxY >= 0 && minX < buffer.width && minY < buffer.height)) {
+            return;
+        }
+
+        int tileMinX = Math.max(0, (int) minX) / tileSize;
+        int tileMaxX = Math.min(buffer.width - 1, (int) maxX) / tileSize;
+        int tileMinY = Math.max(0, (int) minY) / tileSize;
+        int tileMaxY = Math.min(buffer.height - 1, (int) maxY) / tileSize;
+        for (int tileY = tileMinY; tileY <= tileMaxY; tileY++) {
+            for (int tileX = tileMinX; tileX <= tileMaxX; tileX++) {
+                int tile = tileY * tilesX + tileX;
+                if (!partial || dirtyTiles[tile]) {
+                    chunk.add(tile, triangle);
+                }
+            }
+        }
+    }
+
+    protected void rasterizeTile(int tile) {
+        int minX = (tile % tilesX) * tileSize;
+        int minY = (tile / tilesX) * tileSize;
+        int maxX = Math.min(buffer.width, minX + tileSize) - 1;
+        int maxY = Math.min(buffer.height, minY + tileSize) - 1;
+        long start = FrameProfiler.start();
+        if (clearPending) {
+            buffer.clear(clearColor, minX, minY, maxX, maxY, clearDepth);
+            start = FrameProfiler.stage(FrameProfiler.Stage.CLEAR, start);
+        }
+
+        // chunks are contiguous triangle ranges, so walking them in order keeps submission order
+        int lastDraw = -1;
+        boolean occluded = false;
+        for (Chunk chunk : chunks) {
+            int[] triangleIds = chunk.bins[tile];
+            for (int i = 0, size = chunk.binSizes[tile]; i < size; i++) {
+                int t = triangleIds[i];
+                int drawIndex = chunk.triangleDraw[t];
+                Draw draw = draws.get(drawIndex);
+                if (drawIndex != lastDraw) {
+                    lastDraw = drawIndex;
+                    occluded = isOccluded(draw, minX, minY, maxX, maxY);
+                }
+                if (occluded) {
+                    buffer.culledTriangles.increment();
+                    continue;
+                }
+                buffer.rasterizeTriangle(draw.texture, draw.tint, draw.lit, chunk.triangles, t * Buffer.TRIANGLE_STRIDE, minX, minY, maxX, maxY);
+            }
+        }
+        start = FrameProfiler.stage(FrameProfiler.Stage.RASTER, start);
+        if (buffer.getSamples() > 1) {
+            buffer.resolve(minX, minY, maxX, maxY);
+            start = FrameProfiler.stage(FrameProfiler.Stage.RESOLVE, start);
+        }
+        if (lit) {
+            // deferred: every visible pixel of the tile is lit once, while it is still in cache
+            buffer.shade(minX, minY, maxX, maxY);
+            FrameProfiler.stage(FrameProfiler.Stage.SHADE, start);
+        }
+    }
+
+    protected void clearTile(int tile) {
+        int minX = (tile % tilesX) * tileSize;
+        int minY = (tile / tilesX) * tileSize;
+        long start = FrameProfiler.start();
+        buffer.clear(clearColor, minX, minY, Math.min(buffer.width, minX + tileSize) - 1, Math.min(buffer.height, minY + tileSize) - 1, clearDepth);
+        FrameProfiler.stage(FrameProfiler.Stage.CLEAR, start);
+    }
+
+    /**
+     * Mesh level Hi-Z test of the part of a draw that falls into one tile.
+     */
+    protected boolean isOccluded(Draw draw, int minX, int minY, int maxX, int maxY) {
+        float[] bounds = draw.screenBounds;
+        if (!draw.hasScreenBounds) {
+            return false;
+        }
+        minX = Math.max(minX, (int) bounds[0]);
+        minY = Math.max(minY, (int) bounds[1]);
+        maxX = Math.min(maxX, (int) bounds[2]);
+        maxY = Math.min(maxY, (int) bounds[3]);
+        return minX <= maxX && minY <= maxY && buffer.isOccluded(minX, minY, maxX, maxY, bounds[4]);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    protected static class Draw {
+
+        protected Texture texture;
+        protected float[] vertices;
+        protected float[] textureCoords;
+        protected int[] indices;
+        // 0xRRGGBB multiplied into the texture color, Buffer.NO_TINT for none
+        protected int tint;
+        protected boolean lit;
+        protected final Matrix4f mvp = new Matrix4f();
+        protected final VertexStage stage = new VertexStage();
+        // position of this draw among all queued vertices and triangles, and how many it queued
+        protected int firstTriangle, firstVertex;
+        protected int vertexCount, triangleCount;
+        // queued parts of the mesh: first vertex, end vertex, first triangle, end triangle
+        protected int[] ranges = new int[4];
+        protected int rangeCount;
+        // minX, minY, maxX, maxY, nearestZ on screen
+        protected final float[] screenBounds = new float[5];
+        protected boolean hasScreenBounds;
+
+        /**
+         * Queues mesh vertices [vertexFrom, vertexTo) and triangles [triangleFrom, triangleTo), merging with the previous
+         * range when both continue it.
+         */
+        protected void addRange(int vertexFrom, int vertexTo, int triangleFrom, int triangleTo) {
+            vertexCount += vertexTo - vertexFrom;
+            triangleCount += triangleTo - triangleFrom;
+            int last = (rangeCount - 1) * 4;
+            if (rangeCount > 0 && ranges[last + 1] == vertexFrom && ranges[last + 3] == triangleFrom) {
+                ranges[last + 1] = vertexTo;
+                ranges[last + 3] = triangleTo;
+                return;
+            }
+            if (ranges.length == rangeCount * 4) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[rangeCount * 4] = vertexFrom;
+            ranges[rangeCount * 4 + 1] = vertexTo;
+            ranges[rangeCount * 4 + 2] = triangleFrom;
+            ranges[rangeCount * 4 + 3] = triangleTo;
+            rangeCount++;
+        }
+
+        protected void release() {
+            texture = null;
+            vertices = null;
+            textureCoords = null;
+            indices = null;
+        }
+    }
+
+    /**
+     * What an incremental frame drew: the state of the buffer it went to, and per draw what it drew where.
+     */
+    protected static class Contents {
+
+        protected int width, height, clearColor, samples;
+        protected float clipNear, clipFar;
+        protected Buffer.DepthFormat depthFormat;
+        protected Lighting lighting;
+        protected int drawCount;
+        // per draw: texture, vertices, indices and texture coordinates
+        protected Object[] arrays = new Object[0];
+        // per draw: tint, lit, then the inclusive screen bounds minX, minY, maxX, maxY
+        protected int[] values = new int[0];
+        protected float[] matrices = new float[0];
+
+        protected void record(TileRenderer renderer) {
+            Buffer buffer = renderer.buffer;
+            width = buffer.width;
+            height = buffer.height;
+            clearColor = renderer.clearColor;
+            samples = buffer.getSamples();
+            clipNear = buffer.clipNear;
+            clipFar = buffer.clipFar;
+            depthFormat = buffer.getDepthFormat();
+            lighting = buffer.lighting;
+            drawCount = renderer.drawCount;
+            if (arrays.length < drawCount * 4) {
+                arrays = new Object[drawCount * 8];
+                values = new int[drawCount * 12];
+                matrices = new float[drawCount * 32];
+            }
+            for (int i = 0; i < drawCount; i++) {
+                Draw draw = renderer.draws.get(i);
+                arrays[i * 4] = draw.texture;
+                arrays[i * 4 + 1] = draw.vertices;
+                arrays[i * 4 + 2] = draw.indices;
+                arrays[i * 4 + 3] = draw.textureCoords;
+                values[i * 6] = draw.tint;
+                values[i * 6 + 1] = draw.lit ? 1 : 0;
+                // draws of raw arrays have no bounds and may cover the whole screen
+                float[] bounds = draw.screenBounds;
+                values[i * 6 + 2] = draw.hasScreenBounds ? (int) bounds[0] : 0;
+                values[i * 6 + 3] = draw.hasScreenBounds ? (int) bounds[1] : 0;
+                values[i * 6 + 4] = draw.hasScreenBounds ? (int) bounds[2] : width - 1;
+                values[i * 6 + 5] = draw.hasScreenBounds ? (int) bounds[3] : height - 1;
+                draw.mvp.get(matrices, i * 16);
+            }
+            // the buffer holds these arrays until it is drawn into again, which must not keep them reachable
+            Arrays.fill(arrays, drawCount * 4, arrays.length, null);
+        }
+
+        /**
+         * Finds where this frame differs from {@code other}, which may be null for unknown: marks the tiles of
+         * {@code renderer} if given and writes the bounding rectangle to {@code changed}.
+         *
+         * @return whether anything differs
+         */
+        protected boolean compare(Contents other, TileRenderer renderer, int[] changed) {
+            changed[0] = changed[1] = Integer.MAX_VALUE;
+            changed[2] = changed[3] = -1;
+            if (other == null || other.width != width || other.height != height || other.clearColor != clearColor || other.samples != samples
+                    || other.clipNear != clipNear || other.clipFar != clipFar || other.depthFormat != depthFormat || other.lighting != lighting) {
+                add(0, 0, width - 1, height - 1, renderer, changed);
+                return true;
+            }
+            for (int i = 0; i < Math.max(drawCount, other.drawCount); i++) {
+                if (i < drawCount && i < other.drawCount && same(i, other)) {
+                    continue;
+                }
+                if (i < drawCount) {
+                    add(values[i * 6 + 2], values[i * 6 + 3], values[i * 6 + 4], values[i * 6 + 5], renderer, changed);
+                }
+                if (i < other.drawCount) {
+                    add(other.values[i * 6 + 2], other.values[i * 6 + 3], other.values[i * 6 + 4], other.values[i * 6 + 5], renderer, changed);
+                }
+            }
+            return changed[2] >= 0;
+        }
+
+        private boolean same(int draw, Contents other) {
+            for (int i = draw * 4; i < draw * 4 + 4; i++) {
+                if (arrays[i] != other.arrays[i]) {
+                    return false;
+                }
+            }
+            for (int i = draw * 6; i < draw * 6 + 6; i++) {
+                if (values[i] != other.values[i]) {
+                    return false;
+                }
+            }
+            for (int i = draw * 16; i < draw * 16 + 16; i++) {
+                if (matrices[i] != other.matrices[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void add(int minX, int minY, int maxX, int maxY, TileRenderer renderer, int[] changed) {
+            changed[0] = Math.min(changed[0], minX);
+            changed[1] = Math.min(changed[1], minY);
+            changed[2] = Math.max(changed[2], maxX);
+            changed[3] = Math.max(changed[3], maxY);
+            if (renderer != null) {
+                renderer.markTiles(minX, minY, maxX, maxY);
+            }
+        }
+
+        /**
+         * @return whether a draw reaches into a tile marked dirty
+         */
+        protected boolean touches(int draw, TileRenderer renderer) {
+            int tileSize = renderer.tileSize;
+            for (int tileY = values[draw * 6 + 3] / tileSize; tileY <= values[draw * 6 + 5] / tileSize; tileY++) {
+                for (int tileX = values[draw * 6 + 2] / tileSize; tileX <= values[draw * 6 + 4] / tileSize; tileX++) {
+                    if (renderer.dirtyTiles[tileY * renderer.tilesX + tileX]) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Set-up triangles and tile bins of one contiguous range of submitted triangles. Written by one worker
+     * during setup, read by all workers during rasterization.
+     */
+    protected static class Chunk {
+
+        protected final Clipper clipper = new Clipper();
+
+        protected float[] triangles = new float[0];
+        protected int[] triangleDraw = new int[0];
+        protected int triangleCount;
+
+        // bins[tile] holds indices into triangles
+        protected int[][] bins = new int[0][];
+        protected int[] binSizes = new int[0];
+
+        protected void reset(int tileCount, int expectedTriangles) {
+            if (bins.length < tileCount) {
+                bins = new int[tileCount][16];
+                binSizes = new int[tileCount];
+            }
+            for (int tile = 0; tile < tileCount; tile++) {
+                binSizes[tile] = 0;
+            }
+            triangleCount = 0;
+            ensureCapacity(expectedTriangles);
+        }
+
+        protected void ensureCapacity(int additional) {
+            int required = triangleCount + additional;
+            if (triangleDraw.length < required) {
+                int capacity = Math.max(required, triangleDraw.length * 2);
+                triangles = Arrays.copyOf(triangles, capacity * Buffer.TRIANGLE_STRIDE);
+                triangleDraw = Arrays.copyOf(triangleDraw, capacity);
+            }
+        }
+
+        protected void add(int tile, int triangle) {
+            if (binSizes[tile] == bins[tile].length) {
+                bins[tile] = Arrays.copyOf(bins[tile], bins[tile].length * 2);
+            }
+            bins[tile][binSizes[tile]++] = triangle;
+        }
+    }
+
+    /**
+     * Splits [from, to) in halves until single indices remain, letting idle workers steal the rest.
+     */
+    protected static class ParallelFor extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final IntConsumer body;
+
+        public ParallelFor(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                long start = FrameProfiler.start();
+                body.accept(from);
+                FrameProfiler.busy(start);
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParallelFor(from, middle, body), new ParallelFor(middle, to, body));
+            }
+        }
+    }
+}
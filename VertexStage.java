@@ -0,0 +1,151 @@
+import org.joml.Matrix4f;
+
+/**
+ * File: VertexStage.java
+ * Created on 18.10.2026, 14:22:05
+ *
+ * Post-transform vertex cache of one draw. Every unique vertex of a mesh is transformed once per frame
+ * with a premultiplied MVP matrix into preallocated arrays, triangle setup then only reads them.
+ * The arrays grow to the largest mesh ever prepared and are reused afterwards.
+ *
+ * @author LWJGL2
+ */
+public class VertexStage {
+
+    /**
+     * Per vertex: screen x, screen y, depth, 1/w, texture u, texture v, the {@link Lighting#SURFACE_STRIDE} floats of
+     * its lit surface, then clip-space x, y, z, w for the clipper.
+     */
+    public static final int STRIDE = 16;
+    public static final int SURFACE = 6, CLIP = SURFACE + Lighting.SURFACE_STRIDE;
+
+    public float[] data = new float[0];
+    // planes of the Clipper the vertex lies outside of
+    public int[] outcodes = new int[0];
+    public int vertexCount;
+
+    // surfaces are only written while lighting and normals are set, in world space through the model matrix
+    protected Lighting lighting;
+    protected float[] normals;
+    protected final float[] model = new float[12];
+    // cofactors of the upper 3x3 of the model matrix, the inverse transpose up to a scale
+    protected final float[] normalModel = new float[9];
+
+    public void prepare(int vertexCount) {
+        this.vertexCount = vertexCount;
+        if (outcodes.length < vertexCount) {
+            data = new float[vertexCount * STRIDE];
+            outcodes = new int[vertexCount];
+        }
+    }
+
+    /**
+     * Makes the following transforms write the surface of every vertex too: world normal and position, or the light
+     * reaching it for {@link Lighting.Mode#GOURAUD}. Null lighting or normals stop that again.
+     */
+    public void setLighting(Lighting lighting, Matrix4f modelMatrix, float[] normals) {
+        if (lighting == null || normals == null) {
+            this.lighting = null;
+            this.normals = null;
+            return;
+        }
+        this.lighting = lighting;
+        this.normals = normals;
+        float a = modelMatrix.m00(), b = modelMatrix.m10(), c = modelMatrix.m20();
+        float d = modelMatrix.m01(), e = modelMatrix.m11(), f = modelMatrix.m21();
+        float g = modelMatrix.m02(), h = modelMatrix.m12(), i = modelMatrix.m22();
+        float[] m = model;
+        m[0] = a;
+        m[1] = b;
+        m[2] = c;
+        m[3] = modelMatrix.m30();
+        m[4] = d;
+        m[5] = e;
+        m[6] = f;
+        m[7] = modelMatrix.m31();
+        m[8] = g;
+        m[9] = h;
+        m[10] = i;
+        m[11] = modelMatrix.m32();
+        float c00 = e * i - f * h, c01 = f * g - d * i, c02 = d * h - e * g;
+        // mirroring matrices flip the cofactors, the sign of the determinant turns them back
+        float sign = a * c00 + b * c01 + c * c02 < 0 ? -1 : 1;
+        float[] n = normalModel;
+        n[0] = c00 * sign;
+        n[1] = c01 * sign;
+        n[2] = c02 * sign;
+        n[3] = (c * h - b * i) * sign;
+        n[4] = (a * i - c * g) * sign;
+        n[5] = (b * g - a * h) * sign;
+        n[6] = (b * f - c * e) * sign;
+        n[7] = (c * d - a * f) * sign;
+        n[8] = (a * e - b * d) * sign;
+    }
+
+    /**
+     * Transforms vertices [from, to). Disjoint ranges may be transformed concurrently.
+     */
+    public void transform(Matrix4f mvp, float[] vertices, float[] textureCoords, int from, int to, int width, int height, float near, float far) {
+        float m00 = mvp.m00(), m01 = mvp.m01(), m02 = mvp.m02(), m03 = mvp.m03();
+        float m10 = mvp.m10(), m11 = mvp.m11(), m12 = mvp.m12(), m13 = mvp.m13();
+        float m20 = mvp.m20(), m21 = mvp.m21(), m22 = mvp.m22(), m23 = mvp.m23();
+        float m30 = mvp.m30(), m31 = mvp.m31(), m32 = mvp.m32(), m33 = mvp.m33();
+        float halfWidth = width / 2.0f;
+        float halfHeight = height / 2.0f;
+
+        for (int v = from; v < to; v++) {
+            float x = vertices[v * 3];
+            float y = vertices[v * 3 + 1];
+            float z = vertices[v * 3 + 2];
+
+            float clipX = m00 * x + m10 * y + m20 * z + m30;
+            float clipY = m01 * x + m11 * y + m21 * z + m31;
+            float clipZ = m02 * x + m12 * y + m22 * z + m32;
+            float clipW = m03 * x + m13 * y + m23 * z + m33;
+            float inverseW = 1.0f / clipW;
+
+            int o = v * STRIDE;
+            data[o] = (clipX * inverseW + 1.0f) * halfWidth;
+            data[o + 1] = (1.0f - clipY * inverseW) * halfHeight;
+            data[o + 2] = clipZ * inverseW;
+            data[o + 3] = inverseW;
+            data[o + 4] = textureCoords[v * 2];
+            data[o + 5] = textureCoords[v * 2 + 1];
+            data[o + CLIP] = clipX;
+            data[o + CLIP + 1] = clipY;
+            data[o + CLIP + 2] = clipZ;
+            data[o + CLIP + 3] = clipW;
+            outcodes[v] = Clipper.outcode(clipX, clipY, clipW, near, far);
+            if (normals != null) {
+                surface(x, y, z, v, o + SURFACE);
+            }
+        }
+    }
+
+    private void surface(float x, float y, float z, int v, int offset) {
+        float[] m = model, n = normalModel;
+        float px = m[0] * x + m[1] * y + m[2] * z + m[3];
+        float py = m[4] * x + m[5] * y + m[6] * z + m[7];
+        float pz = m[8] * x + m[9] * y + m[10] * z + m[11];
+        float normalX = normals[v * 3], normalY = normals[v * 3 + 1], normalZ = normals[v * 3 + 2];
+        float nx = n[0] * normalX + n[1] * normalY + n[2] * normalZ;
+        float ny = n[3] * normalX + n[4] * normalY + n[5] * normalZ;
+        float nz = n[6] * normalX + n[7] * normalY + n[8] * normalZ;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        }
+        if (lighting.mode == Lighting.Mode.GOURAUD) {
+            lighting.light(nx, ny, nz, px, py, pz, data, offset);
+            return;
+        }
+        data[offset] = nx;
+        data[offset + 1] = ny;
+        data[offset + 2] = nz;
+        data[offset + 3] = px;
+        data[offset + 4] = py;
+        data[offset + 5] = pz;
+    }
+}
@@ -0,0 +1,479 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import javax.imageio.ImageIO;
+import net.steelswing.engine.api.vecmath.MathUtil;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * File: Benchmark.java
+ * Created on 18.10.2026, 18:40:12
+ *
+ * Fixtures of the JMH benchmarks in jmh/bench, and a launcher for them. JMH only takes benchmark classes from a named
+ * package, which cannot see the renderer in the unnamed one, so the benchmarks get every case as an IntSupplier from
+ * the static methods here, looked up once per trial. A case returns a pixel or a count for the Blackhole.
+ *
+ * Scenes are rendered from fixed camera poses: teapot/debug.fbx, plus synthetic meshes that are triangle-heavy
+ * (a dense sphere covering a small part of the screen), fill-heavy (the inside of a coarse sphere around the camera,
+ * a few screen-sized triangles) and overdraw-heavy (16 of those nested and drawn back to front). The triangle-heavy
+ * sphere is also rendered split into {@link Meshlets}, and as a crowd of 121 copies at a distance, once with LOD
+ * selection and once always at full detail. The instances case draws 2000 tinted copies of a small sphere scattered
+ * around the camera with one instanced call.
+ *
+ * <pre>
+ * gradle jmh -Pjmh="[JMH options] [-save results.properties] [-compare results.properties] [-depth]"
+ * </pre>
+ * Everything but the last three goes to JMH, like a benchmark name filter or -p scene=triangles.
+ * -compare exits with status 1 if any benchmark got slower than the saved result by more than
+ * -Dbenchmark.threshold percent (10 by default), which is enough to catch regressions on CI machines without a display.
+ * -depth only prints how many distinct depths the integer depth formats keep over the synthetic scenes.
+ *
+ * @author LWJGL2
+ */
+public class Benchmark {
+
+    public static final int WIDTH = 856, HEIGHT = 480;
+
+    private static final double THRESHOLD = Double.parseDouble(System.getProperty("benchmark.threshold", "10"));
+
+    public static class Scene {
+
+        public final String name;
+        public final List<StaticMeshLoader.Mesh> meshes;
+        public final Texture texture;
+
+        public Scene(String name, List<StaticMeshLoader.Mesh> meshes, Texture texture) {
+            this.name = name;
+            this.meshes = meshes;
+            this.texture = texture;
+        }
+    }
+
+    private static final Map<String, Scene> scenes = new HashMap<>();
+    private static Texture checker;
+    private static TileRenderer renderer;
+
+    public static void main(String[] args) throws Exception {
+        String save = null, compare = null;
+        boolean depth = false;
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-save")) {
+                save = args[++i];
+            } else if (args[i].equals("-compare")) {
+                compare = args[++i];
+            } else if (args[i].equals("-depth")) {
+                depth = true;
+            } else {
+                options.add(args[i]);
+            }
+        }
+
+        if (depth) {
+            for (String name : new String[]{"triangles", "fill", "overdraw"}) {
+                for (Buffer.DepthFormat depthFormat : new Buffer.DepthFormat[]{Buffer.DepthFormat.INT16, Buffer.DepthFormat.INT24}) {
+                    System.out.printf("depth/%s: %d distinct values over %s%n", depthFormat.name().toLowerCase(), depthValues(depthFormat, scene(name)), name);
+                }
+            }
+            System.exit(0);
+        }
+
+        Properties results = new Properties();
+        for (RunResult result : new Runner(new CommandLineOptions(options.toArray(new String[0]))).run()) {
+            results.setProperty(label(result.getParams()), Double.toString(result.getPrimaryResult().getScore()));
+        }
+        if (save != null) {
+            try (Writer writer = new FileWriter(save)) {
+                results.store(writer, "Benchmark scores");
+            }
+        }
+        if (compare != null && !compare(results, new File(compare))) {
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static String label(BenchmarkParams params) {
+        StringBuilder label = new StringBuilder(params.getBenchmark());
+        for (String key : params.getParamsKeys()) {
+            label.append(label.indexOf(":") < 0 ? ':' : ',').append(key).append('=').append(params.getParam(key));
+        }
+        return label.toString();
+    }
+
+    /**
+     * Compares the scores, time per operation, against a file written with -save.
+     *
+     * @return false if any benchmark regressed by more than the threshold
+     */
+    public static boolean compare(Properties results, File file) throws IOException {
+        Properties saved = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            saved.load(reader);
+        }
+        boolean passed = true;
+        for (String key : results.stringPropertyNames()) {
+            String score = saved.getProperty(key);
+            if (score == null) {
+                continue;
+            }
+            double change = (Double.parseDouble(results.getProperty(key)) / Double.parseDouble(score) - 1) * 100;
+            if (change > THRESHOLD) {
+                System.out.printf("REGRESSION %-60s %+.1f%%%n", key, change);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * One frame of the scene from one camera angle, drawn with the tile renderer ({@code tile}), the same with the
+     * vector row loop ({@code tile-simd}), drawFilledTriangleInline ({@code inline}) or drawFilledTriangle ({@code legacy}).
+     */
+    public static IntSupplier frame(String path, String sceneName, float angle) {
+        Scene scene = scene(sceneName);
+        Buffer buffer = new Buffer(WIDTH, HEIGHT);
+        switch (path) {
+            case "tile":
+            case "tile-simd":
+                if (path.equals("tile-simd")) {
+                    if (Buffer.VECTOR_ROWS == null) {
+                        throw new IllegalStateException("VectorRowRasterizer needs simd/ compiled and --add-modules jdk.incubator.vector");
+                    }
+                    buffer.rowRasterizer = Buffer.VECTOR_ROWS;
+                }
+                TileRenderer renderer = renderer();
+                return () -> {
+                    camera(buffer, angle);
+                    buffer.clear(Color.black);
+                    renderer.begin(buffer);
+                    for (StaticMeshLoader.Mesh mesh : scene.meshes) {
+                        renderer.draw(scene.texture, mesh);
+                    }
+                    renderer.end();
+                    return buffer.pixelData[buffer.pixelData.length / 2];
+                };
+            case "inline":
+                return () -> {
+                    camera(buffer, angle);
+                    buffer.clear(Color.black);
+                    for (StaticMeshLoader.Mesh mesh : scene.meshes) {
+                        buffer.drawFilledTriangleInline(scene.texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords, 0, mesh.indices.length);
+                    }
+                    return buffer.pixelData[buffer.pixelData.length / 2];
+                };
+            case "legacy":
+                return () -> {
+                    camera(buffer, angle);
+                    buffer.clear(Color.black);
+                    for (StaticMeshLoader.Mesh mesh : scene.meshes) {
+                        buffer.drawFilledTriangle(scene.texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords);
+                    }
+                    return buffer.pixelData[buffer.pixelData.length / 2];
+                };
+            default:
+                throw new IllegalArgumentException("Expected tile, tile-simd, inline or legacy, got " + path);
+        }
+    }
+
+    public static IntSupplier vertexStage(String sceneName) {
+        Scene scene = scene(sceneName);
+        Buffer buffer = new Buffer(WIDTH, HEIGHT);
+        VertexStage stage = new VertexStage();
+        Matrix4f mvp = new Matrix4f();
+        return () -> {
+            camera(buffer, 0);
+            mvp.set(buffer.projectionMatrix).mul(buffer.viewMatrix).mul(buffer.modelMatrix);
+            for (StaticMeshLoader.Mesh mesh : scene.meshes) {
+                int vertexCount = mesh.vertices.length / 3;
+                stage.prepare(vertexCount);
+                stage.transform(mvp, mesh.vertices, mesh.textureCoords, 0, vertexCount, WIDTH, HEIGHT, buffer.clipNear, buffer.clipFar);
+            }
+            return stage.vertexCount;
+        };
+    }
+
+    public static IntSupplier clear(String depthFormat) {
+        Buffer buffer = new Buffer(WIDTH, HEIGHT);
+        // the integer formats need a finite range, this is the one of the projection matrix camera() sets
+        buffer.clipNear = 1;
+        buffer.clipFar = 1000;
+        buffer.setDepthFormat(Buffer.DepthFormat.valueOf(depthFormat));
+        return () -> {
+            buffer.clear(Color.black);
+            return buffer.pixelData[0];
+        };
+    }
+
+    /**
+     * One million lookups along a minifying diagonal walk, like an oblique plane would read them, with getPixel or
+     * with sample and the given filter.
+     */
+    public static IntSupplier texture(String filter) {
+        Texture texture = checker(256, 16);
+        if (filter.equals("getPixel")) {
+            return () -> {
+                int sum = 0;
+                for (int i = 0; i < 1 << 20; i++) {
+                    sum += texture.getPixel((i * 7) & 255, (i * 3 >> 2) & 255);
+                }
+                return sum;
+            };
+        }
+        texture.filter = Texture.Filter.valueOf(filter);
+        return () -> {
+            int sum = 0;
+            for (int i = 0; i < 1 << 20; i++) {
+                sum += texture.sample((i * 7) & 255, (i * 3 >> 2) & 255, 1.5f);
+            }
+            return sum;
+        };
+    }
+
+    public static IntSupplier load() {
+        File file = new File("teapot", "debug.fbx").getAbsoluteFile();
+        scene("teapot");
+        return () -> {
+            try {
+                return StaticMeshLoader.load(file).size();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    public static IntSupplier lit(String mode) {
+        StaticMeshLoader.Mesh sphere = scene("triangles").meshes.get(0);
+        Buffer buffer = new Buffer(WIDTH, HEIGHT);
+        Lighting lighting = new Lighting();
+        lighting.mode = Lighting.Mode.valueOf(mode);
+        lighting.addDirectional(-1, -1, -1, Color.white, 0.8f);
+        lighting.addPoint(0, 0.5f, 1.5f, 4, Color.orange, 1.5f);
+        buffer.lighting = lighting;
+        TileRenderer renderer = renderer();
+        return () -> {
+            camera(buffer, 0);
+            renderer.begin(buffer);
+            renderer.clear(Color.black);
+            renderer.draw(checker(), sphere);
+            renderer.end();
+            return buffer.pixelData[buffer.pixelData.length / 2];
+        };
+    }
+
+    public static IntSupplier instances() {
+        StaticMeshLoader.Mesh small = sphere(32, 16, 0.3f, false);
+        MeshOptimizer.optimize(small);
+        small.meshlets = Meshlets.build(small);
+        Matrix4f[] instances = new Matrix4f[2000];
+        int[] tints = new int[instances.length];
+        Random random = new Random(1);
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = new Matrix4f().translate(random.nextFloat() * 40 - 20, random.nextFloat() * 4 - 2, random.nextFloat() * 40 - 20);
+            tints[i] = random.nextInt(0x1000000);
+        }
+        Buffer buffer = new Buffer(WIDTH, HEIGHT);
+        TileRenderer renderer = renderer();
+        return () -> {
+            camera(buffer, 0);
+            buffer.clear(Color.black);
+            renderer.begin(buffer);
+            renderer.drawInstanced(checker(), small, instances, tints, instances.length);
+            renderer.end();
+            return buffer.pixelData[buffer.pixelData.length / 2];
+        };
+    }
+
+    /**
+     * @param threshold {@link TileRenderer#lodThreshold}, 0 draws every copy at full detail
+     */
+    public static IntSupplier crowd(float threshold) {
+        StaticMeshLoader.Mesh crowd = sphere(256, 128, 0.6f, false);
+        MeshOptimizer.optimize(crowd);
+        crowd.lods = MeshSimplifier.buildLods(crowd);
+        crowd.meshlets = Meshlets.build(crowd);
+        for (StaticMeshLoader.Mesh lod : crowd.lods) {
+            lod.meshlets = Meshlets.build(lod);
+        }
+        Buffer buffer = new Buffer(WIDTH, HEIGHT);
+        TileRenderer renderer = renderer();
+        return () -> {
+            camera(buffer, 0);
+            buffer.viewMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createViewMatrix(0, 0, 0, 25, 0, 0, 8));
+            buffer.clear(Color.black);
+            renderer.lodThreshold = threshold;
+            renderer.begin(buffer);
+            for (int x = -5; x <= 5; x++) {
+                for (int y = -5; y <= 5; y++) {
+                    buffer.modelMatrix = new Matrix4f().translate(x * 1.5f, y * 1.5f, 0);
+                    renderer.draw(checker(), crowd);
+                }
+            }
+            renderer.end();
+            renderer.lodThreshold = 1;
+            return buffer.pixelData[buffer.pixelData.length / 2];
+        };
+    }
+
+    /**
+     * Precision check of the integer depth formats: draws the scene at the first camera pose and counts the distinct
+     * depths that were stored, which is what is left to resolve its overlapping surfaces.
+     */
+    public static int depthValues(Buffer.DepthFormat depthFormat, Scene scene) {
+        Buffer buffer = new Buffer(WIDTH, HEIGHT);
+        // the range of the projection matrix camera() sets
+        buffer.clipNear = 1;
+        buffer.clipFar = 1000;
+        buffer.setDepthFormat(depthFormat);
+        camera(buffer, 0);
+        buffer.clear(Color.black);
+        for (StaticMeshLoader.Mesh mesh : scene.meshes) {
+            buffer.drawFilledTriangle(scene.texture, mesh.vertices, mesh.indices, mesh.normals, mesh.textureCoords);
+        }
+        // only values of the current epoch were written since the clear
+        return (int) Arrays.stream(buffer.depthBuffer, 0, buffer.width * buffer.height).filter(depth -> depth > buffer.depthBase).distinct().count();
+    }
+
+    public static void camera(Buffer buffer, float angle) {
+        buffer.viewMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createViewMatrix(0, 0, 0, 25, angle, 0, 2));
+        buffer.projectionMatrix = MathUtil.convertLwjglxToJoml(MathUtil.createProjectionMatrix(1000, -100, 70, buffer.width, buffer.height));
+        buffer.modelMatrix = new Matrix4f().translate(0, -0.5f, 0);
+    }
+
+    private static synchronized TileRenderer renderer() {
+        if (renderer == null) {
+            renderer = new TileRenderer(Runtime.getRuntime().availableProcessors());
+        }
+        return renderer;
+    }
+
+    private static synchronized Texture checker() {
+        if (checker == null) {
+            checker = checker(256, 16);
+        }
+        return checker;
+    }
+
+    /**
+     * @return teapot, triangles, meshlets, fill or overdraw, built once
+     */
+    public static synchronized Scene scene(String name) {
+        Scene scene = scenes.get(name);
+        if (scene != null) {
+            return scene;
+        }
+        switch (name) {
+            case "teapot":
+                scene = teapot();
+                break;
+            case "triangles":
+                scene = new Scene(name, Arrays.asList(sphere(256, 128, 0.6f, false)), checker());
+                break;
+            case "meshlets":
+                StaticMeshLoader.Mesh dense = sphere(256, 128, 0.6f, false);
+                MeshOptimizer.optimize(dense);
+                dense.meshlets = Meshlets.build(dense);
+                scene = new Scene(name, Arrays.asList(dense), checker());
+                break;
+            case "fill":
+                scene = new Scene(name, Arrays.asList(sphere(8, 4, 20, true)), checker());
+                break;
+            case "overdraw":
+                List<StaticMeshLoader.Mesh> layers = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    // back to front, so every layer passes the depth test again
+                    layers.add(sphere(8, 4, 20 - i, true));
+                }
+                scene = new Scene(name, layers, checker());
+                break;
+            default:
+                throw new IllegalArgumentException("Expected teapot, triangles, meshlets, fill or overdraw, got " + name);
+        }
+        scenes.put(name, scene);
+        return scene;
+    }
+
+    /**
+     * @throws IllegalStateException if the native importer or the files are not available
+     */
+    public static Scene teapot() {
+        List<StaticMeshLoader.Mesh> meshes;
+        Texture texture;
+        try {
+            meshes = StaticMeshLoader.load(new File("teapot", "debug.fbx").getAbsoluteFile());
+            texture = new Texture(ImageIO.read(new File("teapot", "debug.png").getAbsoluteFile()));
+        } catch (Throwable e) {
+            throw new IllegalStateException("teapot/debug.fbx could not be loaded", e);
+        }
+        if (meshes.isEmpty()) {
+            throw new IllegalStateException("teapot/debug.fbx has no meshes");
+        }
+        return new Scene("teapot", meshes, texture);
+    }
+
+    public static Texture checker(int size, int cell) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, (x / cell + y / cell) % 2 == 0 ? 0xffff8000 : 0xff2040c0);
+            }
+        }
+        return new Texture(image);
+    }
+
+    /**
+     * @param inward faces the inside, for shells around the camera
+     */
+    public static StaticMeshLoader.Mesh sphere(int segments, int rings, float radius, boolean inward) {
+        int vertexCount = (segments + 1) * (rings + 1);
+        float[] vertices = new float[vertexCount * 3], normals = new float[vertexCount * 3], textureCoords = new float[vertexCount * 2];
+        int v = 0;
+        for (int ring = 0; ring <= rings; ring++) {
+            for (int segment = 0; segment <= segments; segment++, v++) {
+                double theta = Math.PI * ring / rings, phi = 2 * Math.PI * segment / segments;
+                float x = (float) (Math.sin(theta) * Math.cos(phi)), y = (float) Math.cos(theta), z = (float) (Math.sin(theta) * Math.sin(phi));
+                vertices[v * 3] = x * radius;
+                vertices[v * 3 + 1] = y * radius + 0.5f;
+                vertices[v * 3 + 2] = z * radius;
+                float sign = inward ? -1 : 1;
+                normals[v * 3] = x * sign;
+                normals[v * 3 + 1] = y * sign;
+                normals[v * 3 + 2] = z * sign;
+                textureCoords[v * 2] = (float) segment / segments;
+                textureCoords[v * 2 + 1] = (float) ring / rings;
+            }
+        }
+        int[] indices = new int[segments * rings * 6];
+        int i = 0;
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                int a = ring * (segments + 1) + segment, b = a + segments + 1;
+                int right = inward ? b : a + 1, below = inward ? a + 1 : b;
+                indices[i++] = a;
+                indices[i++] = right;
+                indices[i++] = below;
+                indices[i++] = b;
+                indices[i++] = inward ? b + 1 : a + 1;
+                indices[i++] = inward ? a + 1 : b + 1;
+            }
+        }
+        return new StaticMeshLoader.Mesh(vertices, textureCoords, normals, indices, radius);
+    }
+}
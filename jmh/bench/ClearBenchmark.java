@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * File: ClearBenchmark.java
+ * Created on 19.10.2026, 11:28:13
+ *
+ * Buffer.clear with every depth format, the integer ones only start a new depth epoch.
+ *
+ * @author LWJGL2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClearBenchmark {
+
+    @Param({"FLOAT", "REVERSED_Z", "INT16", "INT24"})
+    public String depthFormat;
+
+    private IntSupplier clear;
+
+    @Setup
+    public void setup() {
+        clear = Fixtures.get("clear", depthFormat);
+    }
+
+    @Benchmark
+    public void clear(Blackhole blackhole) {
+        blackhole.consume(clear.getAsInt());
+    }
+}
@@ -0,0 +1,36 @@
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.IntSupplier;
+
+/**
+ * File: Fixtures.java
+ * Created on 19.10.2026, 11:02:37
+ *
+ * Builds the cases of the benchmarks with the static methods of the Benchmark class in the unnamed package, which
+ * code in a named package like this one cannot call directly. It is looked up once per trial, the case itself is
+ * called through IntSupplier.
+ *
+ * @author LWJGL2
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static IntSupplier get(String name, Object... args) {
+        try {
+            for (Method method : Class.forName("Benchmark").getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                    return (IntSupplier) method.invoke(null, args);
+                }
+            }
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(name + " failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        throw new IllegalArgumentException("Benchmark has no " + name + " with " + args.length + " arguments");
+    }
+}
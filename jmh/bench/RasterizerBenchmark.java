@@ -0,0 +1,77 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * File: RasterizerBenchmark.java
+ * Created on 19.10.2026, 11:10:05
+ *
+ * One frame of every scene from fixed camera poses, through drawFilledTriangle, drawFilledTriangleInline and the
+ * tile renderer with the scalar and the vector row loop.
+ *
+ * @author LWJGL2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterizerBenchmark {
+
+    @Param({"teapot", "triangles", "meshlets", "fill", "overdraw"})
+    public String scene;
+
+    @Param({"0", "90", "200"})
+    public float angle;
+
+    private IntSupplier legacy, inline, tile, tileSimd;
+
+    @Setup
+    public void setup() {
+        legacy = Fixtures.get("frame", "legacy", scene, angle);
+        inline = Fixtures.get("frame", "inline", scene, angle);
+        tile = Fixtures.get("frame", "tile", scene, angle);
+        try {
+            tileSimd = Fixtures.get("frame", "tile-simd", scene, angle);
+        } catch (IllegalStateException e) {
+            // without the Vector API only tileSimd fails
+            tileSimd = () -> {
+                throw e;
+            };
+        }
+    }
+
+    @Benchmark
+    public void drawFilledTriangle(Blackhole blackhole) {
+        blackhole.consume(legacy.getAsInt());
+    }
+
+    @Benchmark
+    public void drawFilledTriangleInline(Blackhole blackhole) {
+        blackhole.consume(inline.getAsInt());
+    }
+
+    @Benchmark
+    public void tile(Blackhole blackhole) {
+        blackhole.consume(tile.getAsInt());
+    }
+
+    @Benchmark
+    public void tileSimd(Blackhole blackhole) {
+        blackhole.consume(tileSimd.getAsInt());
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * File: RendererBenchmark.java
+ * Created on 19.10.2026, 11:39:08
+ *
+ * Tile renderer features beyond plain draws: 2000 instances in one call, a crowd of 121 dense spheres with and
+ * without LOD selection, and the dense sphere lit with every lighting mode.
+ *
+ * @author LWJGL2
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Crowd {
+
+        private IntSupplier instances, lod, full;
+
+        @Setup
+        public void setup() {
+            instances = Fixtures.get("instances");
+            lod = Fixtures.get("crowd", 1f);
+            full = Fixtures.get("crowd", 0f);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lit {
+
+        @Param({"GOURAUD", "PER_PIXEL"})
+        public String mode;
+
+        private IntSupplier frame;
+
+        @Setup
+        public void setup() {
+            frame = Fixtures.get("lit", mode);
+        }
+    }
+
+    @Benchmark
+    public void instances(Crowd crowd, Blackhole blackhole) {
+        blackhole.consume(crowd.instances.getAsInt());
+    }
+
+    @Benchmark
+    public void crowd(Crowd crowd, Blackhole blackhole) {
+        blackhole.consume(crowd.lod.getAsInt());
+    }
+
+    @Benchmark
+    public void crowdFull(Crowd crowd, Blackhole blackhole) {
+        blackhole.consume(crowd.full.getAsInt());
+    }
+
+    @Benchmark
+    public void lit(Lit lit, Blackhole blackhole) {
+        blackhole.consume(lit.frame.getAsInt());
+    }
+}
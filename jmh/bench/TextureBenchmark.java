@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * File: TextureBenchmark.java
+ * Created on 19.10.2026, 11:31:40
+ *
+ * One million texel lookups through Texture.getPixel, and through Texture.sample with every filter.
+ *
+ * @author LWJGL2
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextureBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Lookups {
+
+        private IntSupplier lookups;
+
+        @Setup
+        public void setup() {
+            lookups = Fixtures.get("texture", "getPixel");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Samples {
+
+        @Param({"NEAREST", "BILINEAR", "TRILINEAR"})
+        public String filter;
+
+        private IntSupplier samples;
+
+        @Setup
+        public void setup() {
+            samples = Fixtures.get("texture", filter);
+        }
+    }
+
+    @Benchmark
+    public void getPixel(Lookups lookups, Blackhole blackhole) {
+        blackhole.consume(lookups.lookups.getAsInt());
+    }
+
+    @Benchmark
+    public void sample(Samples samples, Blackhole blackhole) {
+        blackhole.consume(samples.samples.getAsInt());
+    }
+}
@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * File: VertexStageBenchmark.java
+ * Created on 19.10.2026, 11:24:51
+ *
+ * VertexStage.transform of every vertex of the scene from the first camera pose.
+ *
+ * @author LWJGL2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexStageBenchmark {
+
+    @Param({"teapot", "triangles", "meshlets", "fill", "overdraw"})
+    public String scene;
+
+    private IntSupplier transform;
+
+    @Setup
+    public void setup() {
+        transform = Fixtures.get("vertexStage", scene);
+    }
+
+    @Benchmark
+    public void transform(Blackhole blackhole) {
+        blackhole.consume(transform.getAsInt());
+    }
+}
@@ -0,0 +1,177 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * File: VectorRowRasterizer.java
+ * Created on 20.10.2026, 10:07:33
+ *
+ * SIMD version of the pixel loop of {@link Buffer#rasterizeTriangle}, using the incubating Vector API. Every vector of
+ * pixels tests its three edge functions, the depth test and alpha as lane masks, recovers perspective correct texture
+ * coordinates per pixel and gathers nearest texels; bilinear and trilinear textures are sampled per lane.
+ * <p>
+ * Only compiles and loads with {@code --add-modules jdk.incubator.vector}, which is why it lives in its own source
+ * root that is compiled in a separate step; Buffer loads it by name and falls back to its scalar loop without it.
+ * Vectors hold 8 lanes, one aligned 8 pixel block: rows of large triangles are walked one such block at a time, and
+ * wider vectors measured slower because most of their lanes were masked off. A vector is loaded and stored whole,
+ * which only touches pixels of the current tile as long as the tile size is a multiple of 8.
+ *
+ * @author LWJGL2
+ */
+public class VectorRowRasterizer implements Buffer.RowRasterizer {
+
+    // one lane per pixel of a Buffer.BLOCK_SIZE wide block row, the widest row of a block of a large triangle
+    static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_256;
+    static final VectorSpecies<Integer> INTS = IntVector.SPECIES_256;
+    static final int LANES = FLOATS.length();
+    private static final FloatVector FLOAT_LANES = FloatVector.zero(FLOATS).addIndex(1);
+    private static final IntVector INT_LANES = IntVector.zero(INTS).addIndex(1);
+    private static final FloatVector ONES = FloatVector.broadcast(FLOATS, 1.0f);
+    // rows shorter than a vector, mostly of small triangles, are faster in the scalar loop
+    private static final int MIN_COUNT = Integer.getInteger("buffer.simd.min", LANES);
+    // edge steps beyond this could overflow an int lane, such rows take the scalar loop
+    private static final long MAX_STEP = Integer.MAX_VALUE / LANES;
+
+    private static final float ROUND = 12582912.0f, ROUND_LIMIT = 1 << 22;
+    private static final int ROUND_BITS = Float.floatToRawIntBits(ROUND);
+
+    private static final ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> new int[LANES]);
+
+    @Override
+    public boolean row(Buffer buffer, Texture texture, int tint, boolean inside, int x, int y, int count,
+                       long edge21, long edge02, long edge10, long stepX21, long stepX02, long stepX10,
+                       float z, float zDx, float q, float qDx, float qDy, float s, float sDx, float sDy, float t, float tDx, float tDy) {
+        // vectors cover whole aligned blocks, which lie inside one tile, and are written back whole
+        int first = x & -LANES, last = x + count - 1;
+        Buffer.DepthFormat depthFormat = buffer.getDepthFormat();
+        // 24 bit depth values do not fit the float rounding of floor
+        if (depthFormat == Buffer.DepthFormat.INT24 || count < MIN_COUNT || (last | (LANES - 1)) >= buffer.width || Math.abs(stepX21) > MAX_STEP || Math.abs(stepX02) > MAX_STEP || Math.abs(stepX10) > MAX_STEP) {
+            return false;
+        }
+        int[] pixels = buffer.pixelData;
+        int[] depth = buffer.depthBuffer;
+        boolean integerDepth = depthFormat.bits != 0;
+        int depthBase = buffer.depthBase, depthMax = buffer.depthMax;
+        // unlit pixels written over lit ones must not be lit by Buffer.shade
+        boolean[] shadePending = buffer.shadePending;
+        int[] scratch = SCRATCH.get();
+        boolean tinted = (tint & Buffer.NO_TINT) != Buffer.NO_TINT;
+        boolean nearest = texture.filter == Texture.Filter.NEAREST && (texture.wrap == Texture.Wrap.CLAMP || texture.powerOfTwo);
+        IntVector steps21 = INT_LANES.mul((int) stepX21), steps02 = INT_LANES.mul((int) stepX02), steps10 = INT_LANES.mul((int) stepX10);
+        int tested = 0, shaded = 0;
+
+        for (int blockX = first; blockX <= last; blockX += LANES) {
+            // lane 0 is pixel blockX, which may lie before x
+            int i = blockX - x;
+            VectorMask<Integer> mask = INT_LANES.compare(VectorOperators.GE, -i).and(INT_LANES.compare(VectorOperators.LE, last - blockX));
+            if (!inside) {
+                // edge + step * lane >= 0 without 64 bit lanes: compare step * lane against -edge clamped to int
+                mask = mask.and(steps21.compare(VectorOperators.GE, threshold(edge21 + stepX21 * i)))
+                        .and(steps02.compare(VectorOperators.GE, threshold(edge02 + stepX02 * i)))
+                        .and(steps10.compare(VectorOperators.GE, threshold(edge10 + stepX10 * i)));
+                if (!mask.anyTrue()) {
+                    continue;
+                }
+            }
+            int index = blockX + y * buffer.width;
+            FloatVector lanes = FLOAT_LANES.add(i);
+            FloatVector zs = lanes.mul(zDx).add(z);
+            IntVector keys = integerDepth ? floor(zs).max(0).min(depthMax).add(depthBase) : zs.reinterpretAsInts();
+            IntVector depths = IntVector.fromArray(INTS, depth, index);
+            if (FrameProfiler.ENABLED) {
+                tested += mask.trueCount();
+            }
+            mask = mask.and(keys.compare(VectorOperators.GT, depths));
+            if (!mask.anyTrue()) {
+                continue;
+            }
+
+            // exact perspective division per pixel, the mip level comes from the derivatives at pixel blockX
+            FloatVector w = ONES.div(lanes.mul(qDx).add(q));
+            FloatVector us = lanes.mul(sDx).add(s).mul(w);
+            FloatVector vs = lanes.mul(tDx).add(t).mul(w);
+            float firstW = 1.0f / (q + qDx * i);
+            float u = (s + sDx * i) * firstW, v = (t + tDx * i) * firstW;
+            float uDx = (sDx - u * qDx) * firstW, vDx = (tDx - v * qDx) * firstW;
+            float uDy = (sDy - u * qDy) * firstW, vDy = (tDy - v * qDy) * firstW;
+            float lod = Texture.lod(Math.max(uDx * uDx + vDx * vDx, uDy * uDy + vDy * vDy));
+
+            IntVector texels = nearest ? gatherNearest(texture, texture.level(lod), us, vs, scratch) : sample(texture, us, vs, lod, mask, scratch);
+            if (!texture.opaque) {
+                mask = mask.and(texels.lanewise(VectorOperators.ASHR, 24).compare(VectorOperators.NE, 0));
+            }
+            if (tinted) {
+                texels = tint(texels, tint);
+            }
+            if (FrameProfiler.ENABLED) {
+                shaded += mask.trueCount();
+            }
+            IntVector.fromArray(INTS, pixels, index).blend(texels, mask).intoArray(pixels, index);
+            depths.blend(keys, mask).intoArray(depth, index);
+            if (shadePending != null) {
+                for (long written = mask.toLong(); written != 0; written &= written - 1) {
+                    shadePending[index + Long.numberOfTrailingZeros(written)] = false;
+                }
+            }
+        }
+        FrameProfiler.count(FrameProfiler.Counter.PIXELS_TESTED, tested);
+        FrameProfiler.count(FrameProfiler.Counter.PIXELS_SHADED, shaded);
+        return true;
+    }
+
+    private static int threshold(long edge) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, -edge));
+    }
+
+    /**
+     * Same addressing as Texture's nearest lookup, for power of two or clamped textures.
+     */
+    private static IntVector gatherNearest(Texture texture, int level, FloatVector us, FloatVector vs, int[] indices) {
+        FloatVector x = us.mul(texture.levelScaleX[level]), y = vs.mul(texture.levelScaleY[level]);
+        IntVector ix = floor(x), iy = floor(y);
+        int width = texture.levelWidth[level], height = texture.levelHeight[level];
+        if (texture.wrap == Texture.Wrap.CLAMP) {
+            ix = ix.max(0).min(width - 1);
+            iy = iy.max(0).min(height - 1);
+        } else {
+            ix = ix.and(width - 1);
+            iy = iy.and(height - 1);
+        }
+        IntVector blocks = iy.lanewise(VectorOperators.ASHR, Texture.BLOCK_BITS).mul(texture.levelBlocksX[level])
+                .add(ix.lanewise(VectorOperators.ASHR, Texture.BLOCK_BITS))
+                .lanewise(VectorOperators.LSHL, Texture.BLOCK_BITS * 2);
+        IntVector index = blocks.add(iy.and(Texture.BLOCK - 1).lanewise(VectorOperators.LSHL, Texture.BLOCK_BITS))
+                .add(ix.and(Texture.BLOCK - 1));
+        // every lane holds a valid address, even those masked off, so the gather needs no mask
+        index.intoArray(indices, 0);
+        return IntVector.fromArray(INTS, texture.texels, texture.levelOffset[level], indices, 0);
+    }
+
+    /**
+     * Float to int conversion has no intrinsic on every JDK the Vector API runs on, so this rounds with the magic
+     * number trick instead: adding 1.5 * 2^23 leaves the integer in the low mantissa bits. Texel coordinates beyond
+     * 2^22 are clamped.
+     */
+    private static IntVector floor(FloatVector value) {
+        FloatVector clamped = value.max(-ROUND_LIMIT).min(ROUND_LIMIT);
+        FloatVector rounded = clamped.add(ROUND).sub(ROUND);
+        FloatVector floor = rounded.sub(1, rounded.compare(VectorOperators.GT, clamped));
+        return floor.add(ROUND).reinterpretAsInts().sub(ROUND_BITS);
+    }
+
+    private static IntVector sample(Texture texture, FloatVector us, FloatVector vs, float lod, VectorMask<Integer> mask, int[] texels) {
+        for (int lane = 0; lane < LANES; lane++) {
+            texels[lane] = mask.laneIsSet(lane) ? texture.sample(us.lane(lane), vs.lane(lane), lod) : 0;
+        }
+        return IntVector.fromArray(INTS, texels, 0);
+    }
+
+    private static IntVector tint(IntVector pixels, int tint) {
+        IntVector red = pixels.lanewise(VectorOperators.LSHR, 16).and(0xff).mul((tint >> 16 & 0xff) + 1).lanewise(VectorOperators.LSHR, 8);
+        IntVector green = pixels.lanewise(VectorOperators.LSHR, 8).and(0xff).mul((tint >> 8 & 0xff) + 1).lanewise(VectorOperators.LSHR, 8);
+        IntVector blue = pixels.and(0xff).mul((tint & 0xff) + 1).lanewise(VectorOperators.LSHR, 8);
+        return pixels.and(0xff000000).or(red.lanewise(VectorOperators.LSHL, 16)).or(green.lanewise(VectorOperators.LSHL, 8)).or(blue);
+    }
+}
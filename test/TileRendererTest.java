@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * File: TileRendererTest.java
+ * Created on 19.10.2026, 14:12:40
+ *
+ * Incremental rendering into rotating buffers, checked against a window that only ever gets the dirty rectangles.
+ *
+ * @author LWJGL2
+ */
+public class TileRendererTest {
+
+    private static final int SIZE = 128;
+
+    private final TileRenderer renderer = new TileRenderer(2, 64);
+    private final Texture white = texture(0xffffffff);
+    // both windings, so the quad is drawn whichever way it faces
+    private final float[] quad = {-0.5f, -0.5f, 0, 0.5f, -0.5f, 0, 0.5f, 0.5f, 0, -0.5f, 0.5f, 0};
+    private final int[] indices = {0, 1, 2, 0, 2, 3, 2, 1, 0, 3, 2, 0};
+    private final float[] textureCoords = {0, 0, 1, 0, 1, 1, 0, 1};
+    private final int[] window = new int[SIZE * SIZE];
+
+    @AfterEach
+    public void shutdown() {
+        renderer.shutdown();
+    }
+
+    /**
+     * Two buffers take turns, each always getting the same frame. The buffer itself is then already up to date, but
+     * the window shows the other frame, so every present has to carry the difference between the two.
+     */
+    @Test
+    public void alternatingBuffersPresentTheDifferenceToTheWindow() {
+        renderer.incremental = true;
+        Buffer[] buffers = {buffer(), buffer()};
+        float[] positions = {-1, 1};
+        for (int frame = 0; frame < 6; frame++) {
+            Buffer buffer = buffers[frame % 2];
+            boolean presented = render(buffer, positions[frame % 2]);
+            assertTrue(presented, "frame " + frame + " differs from the one before");
+            assertTrue(buffer.isDirty(), "frame " + frame + " has something to present");
+            present(buffer);
+            assertArrayEquals(buffer.pixelData, window, "window after frame " + frame);
+        }
+    }
+
+    private boolean render(Buffer buffer, float x) {
+        renderer.begin(buffer);
+        renderer.clear(Color.black);
+        buffer.modelMatrix = new Matrix4f().translate(x, 0, 0);
+        renderer.draw(white, quad, indices, null, textureCoords);
+        return renderer.end();
+    }
+
+    /**
+     * Copies the dirty rectangle into the window, like {@link Buffer#draw} blits it.
+     */
+    private void present(Buffer buffer) {
+        for (int y = buffer.dirtyMinY; y <= buffer.dirtyMaxY; y++) {
+            System.arraycopy(buffer.pixelData, y * SIZE + buffer.dirtyMinX, window, y * SIZE + buffer.dirtyMinX, buffer.dirtyMaxX - buffer.dirtyMinX + 1);
+        }
+    }
+
+    private static Buffer buffer() {
+        Buffer buffer = new Buffer(SIZE, SIZE);
+        buffer.viewMatrix = new Matrix4f().translate(0, 0, -3);
+        buffer.projectionMatrix = new Matrix4f().perspective((float) Math.toRadians(70), 1, 0.1f, 100);
+        return buffer;
+    }
+
+    private static Texture texture(int color) {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, color);
+        return new Texture(image);
+    }
+}